@@ -5,14 +5,19 @@ import com.x3.app.model.User;
 import com.x3.app.payload.request.AiAssistanceRequest;
 import com.x3.app.payload.response.MessageResponse;
 import com.x3.app.security.services.UserDetailsImpl;
+import com.x3.app.service.AiAnswerPipeline;
 import com.x3.app.service.AiAssistanceService;
+import com.x3.app.service.AiEventHub;
 import com.x3.app.service.UserService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Optional;
@@ -24,6 +29,8 @@ import java.util.Optional;
 public class AiAssistanceController {
     
     private final AiAssistanceService aiAssistanceService;
+    private final AiAnswerPipeline aiAnswerPipeline;
+    private final AiEventHub aiEventHub;
     private final UserService userService;
     
     @GetMapping
@@ -54,6 +61,30 @@ public class AiAssistanceController {
         }
     }
     
+    // Returns the emitter itself so Spring streams it; errors are raised before anything is sent
+    @GetMapping("/{id}/stream")
+    public SseEmitter streamAiAssistanceLog(@PathVariable Long id) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        Optional<AiAssistanceLog> log = aiAssistanceService.getAiAssistanceLogById(id);
+        if (!log.isPresent()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "AI assistance log not found");
+        }
+        if (!log.get().getUser().getId().equals(userDetails.getId()) &&
+                authentication.getAuthorities().stream().noneMatch(a ->
+                        a.getAuthority().equals("ROLE_ADMIN") || a.getAuthority().equals("ROLE_TEACHER"))) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Unauthorized access to AI assistance log");
+        }
+        
+        // Subscribe before re-reading, so an answer written in between is not missed
+        SseEmitter emitter = aiEventHub.subscribeToLog(id);
+        aiAssistanceService.getAiAssistanceLogById(id)
+                .filter(AiAssistanceLog::isAnswered)
+                .ifPresent(answered -> aiEventHub.sendAnswered(emitter, answered));
+        return emitter;
+    }
+    
     @GetMapping("/user")
     public ResponseEntity<?> getUserAiAssistanceLogs() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -71,11 +102,64 @@ public class AiAssistanceController {
     
     @GetMapping("/unanswered")
     @PreAuthorize("hasRole('ADMIN') or hasRole('TEACHER')")
-    public ResponseEntity<List<AiAssistanceLog>> getUnansweredAiAssistanceLogs() {
-        List<AiAssistanceLog> logs = aiAssistanceService.getUnansweredAiAssistanceLogs();
+    public ResponseEntity<List<AiAssistanceLog>> getUnansweredAiAssistanceLogs(
+            @RequestParam(defaultValue = "0") Long afterId,
+            @RequestParam(defaultValue = "20") int size) {
+        List<AiAssistanceLog> logs = aiAssistanceService.getUnansweredAiAssistanceLogs(
+                afterId, Math.max(1, Math.min(size, 100)));
         return ResponseEntity.ok(logs);
     }
     
+    @GetMapping("/unanswered/stream")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('TEACHER')")
+    public SseEmitter streamUnansweredAiAssistanceLogs() {
+        return aiEventHub.subscribeToQueue();
+    }
+    
+    @PostMapping("/claim")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('TEACHER')")
+    public ResponseEntity<List<AiAssistanceLog>> claimUnansweredAiAssistanceLogs(
+            @RequestParam(defaultValue = "10") int batchSize) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        List<AiAssistanceLog> logs = aiAssistanceService.claimUnansweredLogs(
+                userDetails.getId(), Math.max(1, Math.min(batchSize, 50)));
+        return ResponseEntity.ok(logs);
+    }
+    
+    @GetMapping("/pipeline")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('TEACHER')")
+    public ResponseEntity<?> getPipelineMetrics() {
+        return ResponseEntity.ok(
+                new Object() {
+                    public final boolean enabled = aiAnswerPipeline.isEnabled();
+                    public final Long workerId = aiAnswerPipeline.getWorkerId();
+                    public final long pending = aiAssistanceService.countUnansweredAiAssistanceLogs();
+                    public final int queuedBatches = aiAnswerPipeline.getQueueDepth();
+                    public final int inFlightBatches = aiAnswerPipeline.getInFlight();
+                    public final long answered = aiAnswerPipeline.getAnsweredCount();
+                    public final long failed = aiAnswerPipeline.getFailedCount();
+                    public final long rejected = aiAnswerPipeline.getRejectedCount();
+                    public final int streamSubscribers = aiEventHub.getSubscriberCount();
+                }
+        );
+    }
+    
+    @PostMapping("/{id}/release")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('TEACHER')")
+    public ResponseEntity<?> releaseAiAssistanceLog(@PathVariable Long id) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        try {
+            aiAssistanceService.releaseLease(id, userDetails.getId());
+            return ResponseEntity.ok(new MessageResponse("AI assistance log released"));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+        }
+    }
+    
     @PostMapping("/ask")
     public ResponseEntity<?> createAiAssistanceLog(@RequestBody AiAssistanceRequest request) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -104,8 +188,11 @@ public class AiAssistanceController {
             @PathVariable Long id,
             @RequestParam String answer) {
         
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
         try {
-            AiAssistanceLog log = aiAssistanceService.updateAiAssistanceLogWithAnswer(id, answer);
+            AiAssistanceLog log = aiAssistanceService.updateAiAssistanceLogWithAnswer(id, answer, userDetails.getId());
             return ResponseEntity.ok(log);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
@@ -4,21 +4,26 @@ import com.x3.app.model.Course;
 import com.x3.app.model.CourseSection;
 import com.x3.app.model.User;
 import com.x3.app.model.UserSectionProgress;
+import com.x3.app.payload.request.HeartbeatRequest;
+import com.x3.app.payload.response.CourseCompletionResponse;
 import com.x3.app.payload.response.MessageResponse;
+import com.x3.app.payload.response.SectionProgressResponse;
 import com.x3.app.security.services.UserDetailsImpl;
 import com.x3.app.service.CourseService;
+import com.x3.app.service.LearnerNudgeService;
 import com.x3.app.service.UserProgressService;
 import com.x3.app.service.UserService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import javax.validation.Valid;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @CrossOrigin(origins = "*", maxAge = 3600)
 @RestController
@@ -29,6 +34,7 @@ public class CourseController {
     private final CourseService courseService;
     private final UserService userService;
     private final UserProgressService userProgressService;
+    private final LearnerNudgeService learnerNudgeService;
     
     @GetMapping
     public ResponseEntity<List<Course>> getAllCourses() {
@@ -258,6 +264,14 @@ public class CourseController {
         }
     }
     
+    @GetMapping("/progress/summary")
+    public ResponseEntity<List<CourseCompletionResponse>> getProgressSummary() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        return ResponseEntity.ok(userProgressService.getCompletionSummary(userDetails.getId()));
+    }
+    
     @PostMapping("/sections/{sectionId}/progress")
     public ResponseEntity<?> updateSectionProgress(
             @PathVariable Long sectionId,
@@ -267,18 +281,50 @@ public class CourseController {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
         
-        Optional<User> user = userService.getUserById(userDetails.getId());
-        Optional<CourseSection> section = courseService.getSectionById(sectionId);
-        
-        if (user.isPresent() && section.isPresent()) {
-            UserSectionProgress progress = userProgressService.createOrUpdateProgress(
-                    user.get(), section.get(), completed, skipped);
+        try {
+            SectionProgressResponse progress = userProgressService.recordProgress(
+                    userDetails.getId(), sectionId, completed, skipped);
             return ResponseEntity.ok(progress);
-        } else {
+        } catch (DataIntegrityViolationException e) {
+            // The section_id foreign key rejects unknown sections
             return ResponseEntity.badRequest().body(new MessageResponse("User or Section not found"));
         }
     }
     
+    @PostMapping("/progress/heartbeats")
+    public ResponseEntity<?> ingestHeartbeats(@Valid @RequestBody HeartbeatRequest heartbeatRequest) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        userProgressService.ingestHeartbeats(userDetails.getId(), heartbeatRequest.getHeartbeats());
+        return ResponseEntity.accepted().body(new MessageResponse("Heartbeats accepted"));
+    }
+    
+    @GetMapping("/sections/{sectionId}/resume")
+    public ResponseEntity<?> getResumePosition(@PathVariable Long sectionId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        Integer position = userProgressService.getResumePosition(userDetails.getId(), sectionId);
+        return ResponseEntity.ok(
+                new Object() {
+                    public final Long section = sectionId;
+                    public final Integer positionSeconds = position;
+                }
+        );
+    }
+    
+    @PostMapping("/nudges/scan")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> scanNudges() {
+        int written = learnerNudgeService.scan();
+        
+        if (written < 0) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Nudge scan is already running"));
+        }
+        return ResponseEntity.ok(new MessageResponse("Nudge scan wrote " + written + " rows"));
+    }
+    
     @GetMapping("/recommendations")
     public ResponseEntity<?> getRecommendations() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -287,23 +333,22 @@ public class CourseController {
         Optional<User> optionalUser = userService.getUserById(userDetails.getId());
         
         if (optionalUser.isPresent()) {
-            User user = optionalUser.get();
+            // Stagnant sections are precomputed by the nightly nudge scan
+            List<Long> nudgedCourseIds = userProgressService.getNudgedCourseIds(userDetails.getId(), 3);
             
-            // Check if user has stagnant progress
-            List<UserSectionProgress> stagnantProgress = userProgressService.findStagnantProgress(user, 7);
-            
-            if (!stagnantProgress.isEmpty()) {
+            if (!nudgedCourseIds.isEmpty()) {
                 // Recommend courses related to stagnant sections
-                List<Course> recommendedCourses = stagnantProgress.stream()
-                        .map(progress -> progress.getSection().getCourse())
-                        .distinct()
-                        .limit(3)
-                        .collect(Collectors.toList());
+                List<Course> recommendedCourses = courseService.getCoursesByIds(nudgedCourseIds);
                 
                 return ResponseEntity.ok(recommendedCourses);
+            }
+            
+            // Courses that learners with a similar history went on to study
+            List<Long> relatedCourseIds = userProgressService.getRecommendedCourseIds(userDetails.getId(), 3);
+            if (!relatedCourseIds.isEmpty()) {
+                return ResponseEntity.ok(courseService.getCoursesByIds(relatedCourseIds));
             } else {
-                // Provide random recommendations based on completed courses
-                // This is a simplified recommendation logic
+                // No history yet, fall back to random recommendations
                 return ResponseEntity.ok(courseService.getRandomCourses(
                         Course.Category.CATEGORY_1,
                         Course.Level.LEVEL_1,
@@ -0,0 +1,99 @@
+package com.x3.app.controller;
+
+import com.x3.app.model.Course;
+import com.x3.app.payload.response.LeaderboardEntry;
+import com.x3.app.payload.response.MessageResponse;
+import com.x3.app.security.services.UserDetailsImpl;
+import com.x3.app.service.LeaderboardService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+@RequestMapping("/api/leaderboards")
+@RequiredArgsConstructor
+public class LeaderboardController {
+    
+    private static final int MAX_LIMIT = 100;
+    
+    private final LeaderboardService leaderboardService;
+    
+    @GetMapping("/quiz/{quizId}")
+    public ResponseEntity<List<LeaderboardEntry>> getQuizLeaderboard(
+            @PathVariable Long quizId,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(leaderboardService.getTop(LeaderboardService.quizBoard(quizId), clamp(limit)));
+    }
+    
+    @GetMapping("/quiz/{quizId}/me")
+    public ResponseEntity<List<LeaderboardEntry>> getMyQuizRank(
+            @PathVariable Long quizId,
+            @RequestParam(defaultValue = "5") int k) {
+        return ResponseEntity.ok(leaderboardService.getAround(LeaderboardService.quizBoard(quizId), currentUserId(), clamp(k)));
+    }
+    
+    @GetMapping("/course/{courseId}")
+    public ResponseEntity<List<LeaderboardEntry>> getCourseLeaderboard(
+            @PathVariable Long courseId,
+            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(leaderboardService.getTop(LeaderboardService.courseBoard(courseId), clamp(limit)));
+    }
+    
+    @GetMapping("/course/{courseId}/me")
+    public ResponseEntity<List<LeaderboardEntry>> getMyCourseRank(
+            @PathVariable Long courseId,
+            @RequestParam(defaultValue = "5") int k) {
+        return ResponseEntity.ok(leaderboardService.getAround(LeaderboardService.courseBoard(courseId), currentUserId(), clamp(k)));
+    }
+    
+    @GetMapping("/category/{category}/{level}")
+    public ResponseEntity<List<LeaderboardEntry>> getCategoryLeaderboard(
+            @PathVariable String category,
+            @PathVariable String level,
+            @RequestParam(defaultValue = "10") int limit) {
+        
+        try {
+            String board = LeaderboardService.categoryBoard(Course.Category.valueOf(category), Course.Level.valueOf(level));
+            return ResponseEntity.ok(leaderboardService.getTop(board, clamp(limit)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/category/{category}/{level}/me")
+    public ResponseEntity<List<LeaderboardEntry>> getMyCategoryRank(
+            @PathVariable String category,
+            @PathVariable String level,
+            @RequestParam(defaultValue = "5") int k) {
+        
+        try {
+            String board = LeaderboardService.categoryBoard(Course.Category.valueOf(category), Course.Level.valueOf(level));
+            return ResponseEntity.ok(leaderboardService.getAround(board, currentUserId(), clamp(k)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping("/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> rebuildLeaderboards() {
+        int submitted = leaderboardService.rebuild();
+        return ResponseEntity.ok(new MessageResponse("Leaderboards rebuilt from " + submitted + " best scores"));
+    }
+    
+    private Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        return userDetails.getId();
+    }
+    
+    private int clamp(int value) {
+        return Math.max(1, Math.min(value, MAX_LIMIT));
+    }
+}
@@ -1,8 +1,10 @@
 package com.x3.app.controller;
 
+import com.x3.app.model.OutboxEvent;
 import com.x3.app.model.Payment;
 import com.x3.app.model.SubscriptionPackage;
 import com.x3.app.model.User;
+import com.x3.app.model.UserEntitlement;
 import com.x3.app.payload.request.PaymentRequest;
 import com.x3.app.payload.response.MessageResponse;
 import com.x3.app.security.services.UserDetailsImpl;
@@ -17,6 +19,8 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -73,6 +77,35 @@ public class PaymentController {
         }
     }
     
+    @GetMapping("/entitlement")
+    public ResponseEntity<?> getUserEntitlement() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        Optional<UserEntitlement> entitlement = paymentService.getEntitlement(userDetails.getId());
+        boolean isActive = paymentService.hasActiveSubscription(userDetails.getId());
+        return ResponseEntity.ok(
+                new Object() {
+                    public final boolean active = isActive;
+                    public final Long packageId = entitlement.map(UserEntitlement::getPackageId).orElse(null);
+                    public final LocalDateTime validUntil = entitlement.map(UserEntitlement::getValidUntil).orElse(null);
+                }
+        );
+    }
+    
+    @GetMapping("/entitlements/expiring")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<UserEntitlement>> getExpiringEntitlements(@RequestParam(defaultValue = "7") int days) {
+        return ResponseEntity.ok(paymentService.getEntitlementsExpiringWithin(days));
+    }
+    
+    @PostMapping("/entitlements/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> rebuildEntitlements() {
+        long users = paymentService.rebuildEntitlements();
+        return ResponseEntity.ok(new MessageResponse("Entitlements rebuilt for " + users + " users"));
+    }
+    
     @GetMapping("/status/{status}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<List<Payment>> getPaymentsByStatus(@PathVariable String status) {
@@ -95,6 +128,57 @@ public class PaymentController {
         return ResponseEntity.ok(payments);
     }
     
+    @GetMapping("/revenue")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getRevenue(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        
+        BigDecimal total = paymentService.getSumPaidAmountByDateRange(startDate, endDate);
+        long count = paymentService.getPaidCountByDateRange(startDate, endDate);
+        return ResponseEntity.ok(
+                new Object() {
+                    public final LocalDate from = startDate;
+                    public final LocalDate to = endDate;
+                    public final BigDecimal paidAmount = total;
+                    public final long paidCount = count;
+                }
+        );
+    }
+    
+    @PostMapping("/revenue/reconcile")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> reconcileRevenue() {
+        int mismatches = paymentService.reconcileRevenue();
+        
+        if (mismatches < 0) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Revenue reconciliation is already running"));
+        }
+        return ResponseEntity.ok(new MessageResponse("Revenue rollups reconciled, " + mismatches + " rows corrected"));
+    }
+    
+    @GetMapping("/outbox")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getOutbox(@RequestParam(defaultValue = "50") int limit) {
+        long pendingCount = paymentService.countOutboxEvents(OutboxEvent.Status.PENDING);
+        List<OutboxEvent> failed = paymentService.getFailedOutboxEvents(limit);
+        return ResponseEntity.ok(
+                new Object() {
+                    public final long pending = pendingCount;
+                    public final List<OutboxEvent> failedEvents = failed;
+                }
+        );
+    }
+    
+    @PostMapping("/outbox/{id}/retry")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> retryOutboxEvent(@PathVariable Long id) {
+        if (!paymentService.retryOutboxEvent(id)) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Outbox event is not in FAILED state: " + id));
+        }
+        return ResponseEntity.ok(new MessageResponse("Outbox event " + id + " requeued"));
+    }
+    
     @PostMapping("/create")
     public ResponseEntity<?> createPayment(@RequestBody PaymentRequest paymentRequest) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -130,6 +214,12 @@ public class PaymentController {
         
         try {
             Payment.PaymentStatus paymentStatus = Payment.PaymentStatus.valueOf(status);
+            
+            // Gateway retries of an applied callback never reach the database
+            if (paymentService.isDuplicateCallback(orderNumber, paymentStatus, transactionId)) {
+                return ResponseEntity.ok(new MessageResponse("Callback already processed"));
+            }
+            
             Payment updatedPayment = paymentService.updatePaymentStatus(orderNumber, paymentStatus, transactionId);
             return ResponseEntity.ok(updatedPayment);
         } catch (IllegalArgumentException e) {
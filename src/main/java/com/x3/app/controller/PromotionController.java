@@ -1,19 +1,30 @@
 package com.x3.app.controller;
 
 import com.x3.app.model.Promotion;
+import com.x3.app.model.SettlementBatch;
 import com.x3.app.model.User;
+import com.x3.app.payload.response.DownlineResponse;
 import com.x3.app.payload.response.MessageResponse;
 import com.x3.app.security.services.UserDetailsImpl;
+import com.x3.app.service.CommissionSettlementService;
 import com.x3.app.service.PromotionService;
+import com.x3.app.service.ReferralGraphService;
 import com.x3.app.service.UserService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 
@@ -25,6 +36,8 @@ public class PromotionController {
     
     private final PromotionService promotionService;
     private final UserService userService;
+    private final ReferralGraphService referralGraphService;
+    private final CommissionSettlementService settlementService;
     
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
@@ -115,6 +128,97 @@ public class PromotionController {
         }
     }
     
+    @GetMapping("/downline")
+    @PreAuthorize("hasRole('LEADER') or hasRole('ADMIN')")
+    public ResponseEntity<?> getDownline(@RequestParam(defaultValue = "10") int depth,
+                                         @RequestParam(defaultValue = "50") int limit) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        return downlineResponse(userDetails.getId(), depth, limit);
+    }
+    
+    @GetMapping("/downline/{userId}")
+    @PreAuthorize("hasRole('LEADER') or hasRole('ADMIN')")
+    public ResponseEntity<?> getDownlineOfUser(@PathVariable Long userId,
+                                               @RequestParam(defaultValue = "10") int depth,
+                                               @RequestParam(defaultValue = "50") int limit) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        // Leaders may drill into their own downline only
+        if (!userId.equals(userDetails.getId()) &&
+                authentication.getAuthorities().stream().noneMatch(a -> a.getAuthority().equals("ROLE_ADMIN")) &&
+                !referralGraphService.isInDownline(userDetails.getId(), userId)) {
+            return ResponseEntity.status(403).body(new MessageResponse("User is not in your downline"));
+        }
+        return downlineResponse(userId, depth, limit);
+    }
+    
+    @GetMapping("/upline/{userId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<Long>> getUpline(@PathVariable Long userId) {
+        return ResponseEntity.ok(referralGraphService.getAncestors(userId));
+    }
+    
+    @PostMapping("/referrals/backfill")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> backfillReferrals() {
+        long written = referralGraphService.backfillClosure();
+        
+        if (written < 0) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Referral backfill is already running"));
+        }
+        return ResponseEntity.ok(new MessageResponse("Referral closure backfilled, " + written + " pairs written"));
+    }
+    
+    @PostMapping("/settlements")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> settleCommissions() {
+        Optional<SettlementBatch> batch = settlementService.settleAll();
+        
+        if (batch.isPresent()) {
+            return ResponseEntity.ok(batch.get());
+        } else {
+            return ResponseEntity.badRequest().body(new MessageResponse("Commission settlement is already running"));
+        }
+    }
+    
+    @GetMapping("/settlements")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<SettlementBatch>> getSettlements() {
+        return ResponseEntity.ok(settlementService.getRecentBatches());
+    }
+    
+    @GetMapping("/settlements/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getSettlement(@PathVariable Long id) {
+        Optional<SettlementBatch> batch = settlementService.getBatch(id);
+        
+        if (batch.isPresent()) {
+            return ResponseEntity.ok(batch.get());
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    @GetMapping("/settlements/{id}/payout")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> downloadPayoutFile(@PathVariable Long id) {
+        if (!settlementService.getBatch(id).isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            settlementService.writePayoutFile(id, writer);
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"payout-" + id + ".csv\"")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .body(body);
+    }
+    
     @GetMapping("/statistics")
     public ResponseEntity<?> getPromotionStatistics() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -136,4 +240,14 @@ public class PromotionController {
             return ResponseEntity.badRequest().body(new MessageResponse("User not found"));
         }
     }
+    
+    private ResponseEntity<?> downlineResponse(Long userId, int depth, int limit) {
+        Optional<DownlineResponse> downline = referralGraphService.getDownline(userId, depth, limit);
+        
+        if (downline.isPresent()) {
+            return ResponseEntity.ok(downline.get());
+        } else {
+            return ResponseEntity.badRequest().body(new MessageResponse("Referral graph is not built yet"));
+        }
+    }
 }
\ No newline at end of file
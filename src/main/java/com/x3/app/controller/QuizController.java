@@ -1,18 +1,26 @@
 package com.x3.app.controller;
 
 import com.x3.app.model.*;
+import com.x3.app.payload.request.AdaptiveAnswerRequest;
+import com.x3.app.payload.request.PaperBlueprintRequest;
 import com.x3.app.payload.request.QuizAttemptRequest;
+import com.x3.app.payload.response.AdaptiveStepResponse;
 import com.x3.app.payload.response.MessageResponse;
+import com.x3.app.payload.response.RecentAttemptSummary;
+import com.x3.app.payload.response.ScoreStatisticsResponse;
 import com.x3.app.security.services.UserDetailsImpl;
+import com.x3.app.service.ItemAnalysisService;
 import com.x3.app.service.QuizService;
 import com.x3.app.service.UserService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import javax.validation.Valid;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -25,6 +33,7 @@ public class QuizController {
     
     private final QuizService quizService;
     private final UserService userService;
+    private final ItemAnalysisService itemAnalysisService;
     
     @GetMapping
     public ResponseEntity<List<Quiz>> getAllQuizzes() {
@@ -151,8 +160,18 @@ public class QuizController {
         Optional<Quiz> quiz = quizService.getQuizById(quizId);
         
         if (quiz.isPresent()) {
-            List<Question> questions = quizService.getQuestionsByQuiz(quiz.get());
-            return ResponseEntity.ok(questions);
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            
+            // Teachers and admins edit the full question bank; learners get the cached answer-free paper
+            if (authentication.getAuthorities().stream().anyMatch(a ->
+                    a.getAuthority().equals("ROLE_ADMIN") || a.getAuthority().equals("ROLE_TEACHER"))) {
+                List<Question> questions = quizService.getQuestionsByQuiz(quiz.get());
+                return ResponseEntity.ok(questions);
+            }
+            
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(quizService.getQuizPaper(quiz.get()));
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -169,6 +188,29 @@ public class QuizController {
         }
     }
     
+    @GetMapping("/questions/{questionId}/item-statistics")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('TEACHER')")
+    public ResponseEntity<?> getItemStatistics(@PathVariable Long questionId) {
+        Optional<ItemStatistic> statistic = itemAnalysisService.getItemStatistic(questionId);
+        
+        if (statistic.isPresent()) {
+            return ResponseEntity.ok(statistic.get());
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    @PostMapping("/item-statistics/run")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> runItemAnalysis() {
+        int updated = itemAnalysisService.runIncremental();
+        
+        if (updated < 0) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Item analysis is already running"));
+        }
+        return ResponseEntity.ok(new MessageResponse("Item statistics updated for " + updated + " questions"));
+    }
+    
     @PostMapping("/{quizId}/questions")
     @PreAuthorize("hasRole('ADMIN') or hasRole('TEACHER')")
     public ResponseEntity<?> createQuestion(@PathVariable Long quizId, @RequestBody Question question) {
@@ -255,6 +297,116 @@ public class QuizController {
         }
     }
     
+    @PostMapping("/{quizId}/generate")
+    public ResponseEntity<?> startGeneratedQuizAttempt(
+            @PathVariable Long quizId,
+            @Valid @RequestBody PaperBlueprintRequest blueprint) {
+        
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        Optional<User> user = userService.getUserById(userDetails.getId());
+        Optional<Quiz> quiz = quizService.getQuizById(quizId);
+        
+        if (user.isPresent() && quiz.isPresent()) {
+            try {
+                UserQuizAttempt attempt = quizService.startGeneratedQuizAttempt(user.get(), quiz.get(), blueprint);
+                return ResponseEntity.ok(attempt);
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+            }
+        } else {
+            return ResponseEntity.badRequest().body(new MessageResponse("User or Quiz not found"));
+        }
+    }
+    
+    @PostMapping("/{quizId}/adaptive/start")
+    public ResponseEntity<?> startAdaptiveQuizAttempt(
+            @PathVariable Long quizId,
+            @RequestParam String knowledgePoint) {
+        
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        Optional<User> user = userService.getUserById(userDetails.getId());
+        Optional<Quiz> quiz = quizService.getQuizById(quizId);
+        
+        if (user.isPresent() && quiz.isPresent()) {
+            AdaptiveStepResponse step = quizService.startAdaptiveQuizAttempt(user.get(), quiz.get(), knowledgePoint);
+            return ResponseEntity.ok(step);
+        } else {
+            return ResponseEntity.badRequest().body(new MessageResponse("User or Quiz not found"));
+        }
+    }
+    
+    @PostMapping("/attempts/{attemptId}/adaptive/answer")
+    public ResponseEntity<?> answerAdaptiveQuestion(
+            @PathVariable Long attemptId,
+            @Valid @RequestBody AdaptiveAnswerRequest answerRequest) {
+        
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        Optional<UserQuizAttempt> attempt = quizService.getAttemptById(attemptId);
+        
+        if (attempt.isPresent()) {
+            if (!attempt.get().getUser().getId().equals(userDetails.getId())) {
+                return ResponseEntity.status(403).body(new MessageResponse("Unauthorized access to quiz attempt"));
+            }
+            
+            try {
+                return ResponseEntity.ok(quizService.answerAdaptiveQuestion(attempt.get(), answerRequest));
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+            }
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    @PostMapping("/attempts/{attemptId}/adaptive/complete")
+    public ResponseEntity<?> completeAdaptiveQuizAttempt(@PathVariable Long attemptId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        Optional<UserQuizAttempt> attempt = quizService.getAttemptById(attemptId);
+        
+        if (attempt.isPresent()) {
+            if (!attempt.get().getUser().getId().equals(userDetails.getId())) {
+                return ResponseEntity.status(403).body(new MessageResponse("Unauthorized access to quiz attempt"));
+            }
+            
+            try {
+                UserQuizAttempt completedAttempt = quizService.completeAdaptiveQuizAttempt(attempt.get());
+                return ResponseEntity.ok(completedAttempt);
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+            }
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    @GetMapping("/attempts/{attemptId}/paper")
+    public ResponseEntity<?> getAttemptPaper(@PathVariable Long attemptId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+        
+        Optional<UserQuizAttempt> attempt = quizService.getAttemptById(attemptId);
+        
+        if (attempt.isPresent()) {
+            if (!attempt.get().getUser().getId().equals(userDetails.getId())) {
+                return ResponseEntity.status(403).body(new MessageResponse("Unauthorized access to quiz attempt"));
+            }
+            
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(quizService.getAttemptPaper(attempt.get()));
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
     @PostMapping("/{quizId}/complete")
     public ResponseEntity<?> completeQuizAttempt(
             @PathVariable Long quizId,
@@ -274,6 +426,20 @@ public class QuizController {
                 return ResponseEntity.badRequest().body(new MessageResponse("Unauthorized access to quiz attempt"));
             }
             
+            if (userAttempt.isExpired()) {
+                return ResponseEntity.badRequest().body(new MessageResponse("Quiz attempt expired"));
+            }
+            
+            if (userAttempt.getEndTime() != null) {
+                return ResponseEntity.badRequest().body(new MessageResponse("Quiz attempt already completed"));
+            }
+            
+            // Submissions are accepted for quiz.deadline.grace-seconds after the time limit; later ones are rejected
+            // and the deadline job closes the attempt as expired
+            if (quizService.isPastDeadline(userAttempt)) {
+                return ResponseEntity.badRequest().body(new MessageResponse("Quiz time limit exceeded"));
+            }
+            
             // Convert the answers from the request to UserAnswer objects
             List<UserAnswer> userAnswers = new ArrayList<>();
             attemptRequest.getAnswers().forEach(answerRequest -> {
@@ -284,8 +450,13 @@ public class QuizController {
                 userAnswers.add(userAnswer);
             });
             
-            UserQuizAttempt completedAttempt = quizService.completeQuizAttempt(userAttempt, userAnswers);
-            return ResponseEntity.ok(completedAttempt);
+            // A concurrent submit or the deadline job can still close the attempt after the checks above
+            try {
+                UserQuizAttempt completedAttempt = quizService.completeQuizAttempt(userAttempt, userAnswers);
+                return ResponseEntity.ok(completedAttempt);
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+            }
         } else {
             return ResponseEntity.badRequest().body(new MessageResponse("User or Attempt not found"));
         }
@@ -300,25 +471,53 @@ public class QuizController {
         
         if (user.isPresent()) {
             // Get the last 3 attempts
-            List<UserQuizAttempt> recentAttempts = quizService.getLast3AttemptsByUser(user.get());
+            List<RecentAttemptSummary> recentAttempts = quizService.getLast3AttemptsByUser(user.get());
             
-            // Calculate average score for different categories
-            Double mathAvg = quizService.getAverageScoreByCategoryAndLevel(
+            // Calculate average score for different categories (served from the score aggregates)
+            ScoreStatisticsResponse mathStats = quizService.getCategoryScoreStatistics(
                     Course.Category.CATEGORY_1, Course.Level.LEVEL_1);
-            Double scienceAvg = quizService.getAverageScoreByCategoryAndLevel(
+            ScoreStatisticsResponse scienceStats = quizService.getCategoryScoreStatistics(
                     Course.Category.CATEGORY_2, Course.Level.LEVEL_1);
             
             // Create a response object with statistics
             // This would be a custom response class in a real implementation
             return ResponseEntity.ok(
                     new Object() {
-                        public final List<UserQuizAttempt> recent = recentAttempts;
-                        public final Double mathAverage = mathAvg;
-                        public final Double scienceAverage = scienceAvg;
+                        public final List<RecentAttemptSummary> recent = recentAttempts;
+                        public final Double mathAverage = mathStats.getMean();
+                        public final Double mathVariance = mathStats.getVariance();
+                        public final Double scienceAverage = scienceStats.getMean();
+                        public final Double scienceVariance = scienceStats.getVariance();
                     }
             );
         } else {
             return ResponseEntity.badRequest().body(new MessageResponse("User not found"));
         }
     }
+    
+    @GetMapping("/statistics/category")
+    public ResponseEntity<?> getCategoryScoreStatistics(
+            @RequestParam String category,
+            @RequestParam String level) {
+        
+        try {
+            Course.Category categoryEnum = Course.Category.valueOf(category);
+            Course.Level levelEnum = Course.Level.valueOf(level);
+            return ResponseEntity.ok(quizService.getCategoryScoreStatistics(categoryEnum, levelEnum));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @GetMapping("/{quizId}/statistics")
+    public ResponseEntity<ScoreStatisticsResponse> getQuizScoreStatistics(@PathVariable Long quizId) {
+        return ResponseEntity.ok(quizService.getQuizScoreStatistics(quizId));
+    }
+    
+    @PostMapping("/statistics/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> rebuildScoreAggregates() {
+        quizService.rebuildScoreAggregates();
+        return ResponseEntity.ok(new MessageResponse("Score aggregates rebuilt successfully"));
+    }
 }
\ No newline at end of file
@@ -1,9 +1,11 @@
 package com.x3.app.controller;
 
+import com.x3.app.model.LearnerRiskFlag;
 import com.x3.app.model.User;
 import com.x3.app.payload.request.UpdateUserRequest;
 import com.x3.app.payload.response.MessageResponse;
 import com.x3.app.security.services.UserDetailsImpl;
+import com.x3.app.service.LearnerRiskService;
 import com.x3.app.service.UserService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -22,6 +24,7 @@ import java.util.Optional;
 public class UserController {
     
     private final UserService userService;
+    private final LearnerRiskService learnerRiskService;
     
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
@@ -131,8 +134,12 @@ public class UserController {
         
         if (existingUser.isPresent()) {
             user.setId(id);
-            User updatedUser = userService.updateUser(user);
-            return ResponseEntity.ok(updatedUser);
+            try {
+                User updatedUser = userService.updateUser(user);
+                return ResponseEntity.ok(updatedUser);
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(new MessageResponse(e.getMessage()));
+            }
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -150,4 +157,38 @@ public class UserController {
             return ResponseEntity.notFound().build();
         }
     }
+    
+    // Learner risk flags for teacher dashboards
+    
+    @GetMapping("/risk-flags")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('TEACHER')")
+    public ResponseEntity<?> getRiskFlags(
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) List<Long> userIds,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        try {
+            LearnerRiskFlag.Type typeEnum = type != null ? LearnerRiskFlag.Type.valueOf(type) : null;
+            List<LearnerRiskFlag> flags = learnerRiskService.getActiveFlags(
+                    typeEnum, userIds, Math.max(0, page), Math.max(1, Math.min(size, 200)));
+            return ResponseEntity.ok(flags);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Unknown risk flag type"));
+        }
+    }
+    
+    @PostMapping("/{id}/risk-flags/{type}/clear")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('TEACHER')")
+    public ResponseEntity<?> clearRiskFlag(@PathVariable Long id, @PathVariable String type) {
+        try {
+            LearnerRiskFlag.Type typeEnum = LearnerRiskFlag.Type.valueOf(type);
+            if (learnerRiskService.clearFlag(id, typeEnum)) {
+                return ResponseEntity.ok(new MessageResponse("Risk flag cleared"));
+            } else {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Unknown risk flag type"));
+        }
+    }
 }
\ No newline at end of file
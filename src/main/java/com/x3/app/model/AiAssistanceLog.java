@@ -8,7 +8,8 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "ai_assistance_logs")
+@Table(name = "ai_assistance_logs",
+        indexes = @Index(name = "idx_ai_log_answered", columnList = "answered"))
 public class AiAssistanceLog {
     
     @Id
@@ -31,6 +32,17 @@ public class AiAssistanceLog {
     @Column
     private String knowledgePoint;
     
+    // Set while the answer is a copy from a near-duplicate answered log; a teacher's answer clears it
+    @Column
+    private Long sourceLogId;
+    
+    // Work queue lease; an expired lease makes the log claimable again
+    @Column
+    private Long leaseOwnerId;
+    
+    @Column
+    private LocalDateTime leaseExpiresAt;
+    
     @CreationTimestamp
     private LocalDateTime createdAt;
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.x3.app.model;
+
+import lombok.Data;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "item_statistics")
+public class ItemStatistic {
+    
+    @Id
+    private Long questionId;
+    
+    // Additive sums, so new answers can be folded in without rescanning user_answers
+    @Column(nullable = false)
+    private long responseCount;
+    
+    @Column(nullable = false)
+    private long correctCount;
+    
+    @Column(nullable = false)
+    private double scoreSum;
+    
+    @Column(nullable = false)
+    private double scoreSquareSum;
+    
+    @Column(nullable = false)
+    private double correctScoreSum;
+    
+    // Share of responses that were correct
+    @Column
+    private Double pValue;
+    
+    // Point-biserial correlation between answering correctly and the attempt score
+    @Column
+    private Double discriminationIndex;
+    
+    // JSON object of answer -> count
+    @Column(columnDefinition = "TEXT")
+    private String distractorCounts;
+    
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+}
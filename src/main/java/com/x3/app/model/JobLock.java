@@ -0,0 +1,24 @@
+package com.x3.app.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// Cluster-wide lease for a scheduled job, so only one node runs it at a time
+@Data
+@Entity
+@Table(name = "job_locks")
+public class JobLock {
+    
+    @Id
+    @Column(length = 64)
+    private String jobName;
+    
+    // Token of the run holding the lease
+    @Column(length = 64)
+    private String owner;
+    
+    @Column(nullable = false)
+    private LocalDateTime lockedUntil;
+}
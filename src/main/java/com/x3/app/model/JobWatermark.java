@@ -0,0 +1,23 @@
+package com.x3.app.model;
+
+import lombok.Data;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "job_watermarks")
+public class JobWatermark {
+    
+    @Id
+    @Column(length = 64)
+    private String jobName;
+    
+    @Column(nullable = false)
+    private Long lastProcessedId = 0L;
+    
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,34 @@
+package com.x3.app.model;
+
+import lombok.Data;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "learner_abilities",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "knowledge_point"}))
+public class LearnerAbility {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Column(name = "knowledge_point", nullable = false)
+    private String knowledgePoint;
+    
+    // IRT ability estimate on the logit scale
+    @Column(nullable = false)
+    private double theta = 0;
+    
+    @Column(nullable = false)
+    private int responseCount = 0;
+    
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,36 @@
+package com.x3.app.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "learner_nudges",
+        uniqueConstraints = @UniqueConstraint(name = "uk_nudge_user_section", columnNames = {"user_id", "section_id"}),
+        indexes = @Index(name = "idx_nudge_scanned_at", columnList = "scanned_at"))
+public class LearnerNudge {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    // Plain ids keep the table compact; rows are rebuilt by the nightly scan
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Column(name = "course_id", nullable = false)
+    private Long courseId;
+    
+    @Column(name = "section_id", nullable = false)
+    private Long sectionId;
+    
+    // updated_at of the stalled progress row
+    @Column(nullable = false)
+    private LocalDateTime stalledSince;
+    
+    // Start of the scan that last confirmed this nudge
+    @Column(name = "scanned_at", nullable = false)
+    private LocalDateTime scannedAt;
+}
@@ -0,0 +1,48 @@
+package com.x3.app.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "learner_risk_flags",
+        uniqueConstraints = @UniqueConstraint(name = "uk_risk_user_type", columnNames = {"user_id", "flag_type"}),
+        indexes = @Index(name = "idx_risk_active_type", columnList = "active, flag_type, raised_at"))
+public class LearnerRiskFlag {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "flag_type", nullable = false, length = 32)
+    private Type type;
+    
+    @Column(nullable = false)
+    private boolean active = false;
+    
+    // Occurrences in the current streak or window
+    @Column(nullable = false)
+    private Integer counter = 0;
+    
+    @Column
+    private LocalDateTime windowStartedAt;
+    
+    @Column(name = "raised_at")
+    private LocalDateTime raisedAt;
+    
+    @Column
+    private LocalDateTime updatedAt;
+    
+    public enum Type {
+        LOW_SCORE_STREAK,
+        STALLED_SECTIONS,
+        REPEATED_SKIPS,
+        AI_QUESTION_BURST
+    }
+}
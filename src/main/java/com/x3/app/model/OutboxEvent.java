@@ -0,0 +1,59 @@
+package com.x3.app.model;
+
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "outbox_events",
+        uniqueConstraints = @UniqueConstraint(name = "uk_outbox_event_aggregate", columnNames = {"event_type", "aggregate_id"}),
+        indexes = @Index(name = "idx_outbox_status_next_attempt", columnList = "status, next_attempt_at, id"))
+public class OutboxEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 32)
+    private EventType eventType;
+    
+    // Id of the row the event is about, e.g. the payment id; handlers re-read it
+    @Column(name = "aggregate_id", nullable = false)
+    private Long aggregateId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.PENDING;
+    
+    @Column(nullable = false)
+    private int attempts = 0;
+    
+    // Earliest time a relay may pick the event up; also serves as the claim lease
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+    
+    @Column(length = 1000)
+    private String lastError;
+    
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+    
+    @Column
+    private LocalDateTime processedAt;
+    
+    public enum EventType {
+        PAYMENT_PAID,
+        PAYMENT_RECEIPT,
+        PAYMENT_REFUNDED
+    }
+    
+    public enum Status {
+        PENDING,
+        DONE,
+        FAILED
+    }
+}
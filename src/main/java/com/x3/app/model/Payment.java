@@ -10,7 +10,9 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "payments")
+@Table(name = "payments",
+        uniqueConstraints = @UniqueConstraint(name = "uk_payment_order_number", columnNames = "order_number"),
+        indexes = @Index(name = "idx_payment_status_created", columnList = "status, created_at"))
 public class Payment {
     
     @Id
@@ -48,6 +50,10 @@ public class Payment {
     @Column
     private LocalDateTime validUntil;
     
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version = 0L;
+    
     @CreationTimestamp
     private LocalDateTime createdAt;
     
@@ -59,6 +65,6 @@ public class Payment {
     }
     
     public enum PaymentStatus {
-        PENDING, PAID, FAILED, REFUNDED
+        PENDING, PAID, FAILED, REFUNDED, EXPIRED
     }
 }
\ No newline at end of file
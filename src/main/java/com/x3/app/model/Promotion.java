@@ -10,7 +10,12 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "promotions")
+@Table(name = "promotions",
+        indexes = {
+                @Index(name = "idx_promotion_paid_user", columnList = "paid, user_id"),
+                @Index(name = "idx_promotion_settlement_batch", columnList = "settlement_batch_id, user_id"),
+                @Index(name = "idx_promotion_clawback_batch", columnList = "clawback_batch_id, user_id")
+        })
 public class Promotion {
     
     @Id
@@ -25,6 +30,11 @@ public class Promotion {
     @JoinColumn(name = "invited_user_id", nullable = false)
     private User invitedUser;
     
+    // Payment the commission was earned on; unique so a replayed event cannot pay it twice
+    @OneToOne
+    @JoinColumn(name = "payment_id", unique = true)
+    private Payment payment;
+    
     @Column(nullable = false, precision = 10, scale = 2)
     private BigDecimal commissionAmount;
     
@@ -34,6 +44,18 @@ public class Promotion {
     @Column
     private LocalDateTime paidAt;
     
+    // Settlement batch that marked the commission paid
+    @Column(name = "settlement_batch_id")
+    private Long settlementBatchId;
+    
+    // Set when the payment was refunded after the commission was paid out; the promoter owes it back
+    @Column
+    private LocalDateTime clawedBackAt;
+    
+    // Settlement batch that deducted the clawed back commission from the promoter's payout
+    @Column(name = "clawback_batch_id")
+    private Long clawbackBatchId;
+    
     @CreationTimestamp
     private LocalDateTime createdAt;
     
@@ -0,0 +1,30 @@
+package com.x3.app.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+
+/**
+ * One row per (ancestor, descendant) pair of the referral tree built from {@link User#getInvitedBy()},
+ * including a depth-0 row for every user, so downline membership and depth are single index lookups.
+ */
+@Data
+@Entity
+@Table(name = "referral_closure",
+        uniqueConstraints = @UniqueConstraint(name = "uk_referral_ancestor_descendant", columnNames = {"ancestor_id", "descendant_id"}),
+        indexes = @Index(name = "idx_referral_descendant_depth", columnList = "descendant_id, depth"))
+public class ReferralClosure {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "ancestor_id", nullable = false)
+    private Long ancestorId;
+    
+    @Column(name = "descendant_id", nullable = false)
+    private Long descendantId;
+    
+    @Column(nullable = false)
+    private int depth;
+}
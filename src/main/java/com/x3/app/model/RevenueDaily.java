@@ -0,0 +1,41 @@
+package com.x3.app.model;
+
+import lombok.Data;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "revenue_daily",
+        uniqueConstraints = @UniqueConstraint(name = "uk_revenue_day_package_method",
+                columnNames = {"day", "package_id", "payment_method"}))
+public class RevenueDaily {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    // Day the payment was paid
+    @Column(nullable = false)
+    private LocalDate day;
+    
+    // 0 for payments without a package, so the unique key also covers them
+    @Column(name = "package_id", nullable = false)
+    private Long packageId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "payment_method", nullable = false, length = 16)
+    private Payment.PaymentMethod paymentMethod;
+    
+    @Column(nullable = false)
+    private long amountCents;
+    
+    @Column(nullable = false)
+    private long paymentCount;
+    
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,41 @@
+package com.x3.app.model;
+
+import lombok.Data;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "score_aggregates",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"scope", "scope_key"}))
+public class ScoreAggregate {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private Scope scope;
+    
+    @Column(name = "scope_key", nullable = false, length = 64)
+    private String scopeKey;
+    
+    @Column(nullable = false)
+    private long attemptCount;
+    
+    @Column(nullable = false)
+    private double scoreSum;
+    
+    @Column(nullable = false)
+    private double scoreSquareSum;
+    
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+    
+    public enum Scope {
+        QUIZ, CATEGORY_LEVEL_DIFFICULTY
+    }
+}
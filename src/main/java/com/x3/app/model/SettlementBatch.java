@@ -0,0 +1,58 @@
+package com.x3.app.model;
+
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "settlement_batches")
+public class SettlementBatch {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.RUNNING;
+    
+    // paid_at written to every promotion the batch settles
+    @Column(nullable = false)
+    private LocalDateTime settledAt;
+    
+    @Column(nullable = false)
+    private long userCount = 0;
+    
+    @Column(nullable = false)
+    private long promotionCount = 0;
+    
+    // Net of the clawbacks below
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal totalAmount = BigDecimal.ZERO;
+    
+    @Column(nullable = false)
+    private long clawbackCount = 0;
+    
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal clawbackAmount = BigDecimal.ZERO;
+    
+    @Column(length = 1000)
+    private String lastError;
+    
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+    
+    @Column
+    private LocalDateTime completedAt;
+    
+    // A FAILED batch keeps the chunks it settled; the next run picks up the rest
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
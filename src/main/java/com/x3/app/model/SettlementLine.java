@@ -0,0 +1,37 @@
+package com.x3.app.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+
+@Data
+@Entity
+@Table(name = "settlement_lines",
+        uniqueConstraints = @UniqueConstraint(name = "uk_settlement_line_batch_user", columnNames = {"batch_id", "user_id"}))
+public class SettlementLine {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "batch_id", nullable = false)
+    private Long batchId;
+    
+    // Promoter the commission is paid out to
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Column(name = "promotion_count", nullable = false)
+    private int promotionCount;
+    
+    // Payable amount: commission settled by the batch less the clawbacks it deducted
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal amount;
+    
+    @Column(name = "clawback_count", nullable = false)
+    private int clawbackCount;
+    
+    @Column(name = "clawback_amount", nullable = false, precision = 14, scale = 2)
+    private BigDecimal clawbackAmount = BigDecimal.ZERO;
+}
@@ -0,0 +1,28 @@
+package com.x3.app.model;
+
+import lombok.Data;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "user_entitlements",
+        indexes = @Index(name = "idx_entitlement_valid_until", columnList = "valid_until"))
+public class UserEntitlement {
+    
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    
+    // Package of the payment that grants the latest validUntil
+    @Column(name = "package_id")
+    private Long packageId;
+    
+    @Column(name = "valid_until", nullable = false)
+    private LocalDateTime validUntil;
+    
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+}
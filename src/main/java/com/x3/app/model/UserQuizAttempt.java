@@ -11,7 +11,8 @@ import java.util.List;
 
 @Data
 @Entity
-@Table(name = "user_quiz_attempts")
+@Table(name = "user_quiz_attempts",
+        indexes = @Index(name = "idx_attempt_open", columnList = "end_time, start_time"))
 public class UserQuizAttempt {
     
     @Id
@@ -44,6 +45,29 @@ public class UserQuizAttempt {
     @Column
     private Integer timeSpentSeconds = 0;
     
+    // Timed attempt that ran out before it was submitted; it has no score and stays out of all statistics
+    @Column(nullable = false)
+    private boolean expired = false;
+    
+    // Set only for generated papers, recording how the paper was drawn
+    @Column
+    private Long paperSeed;
+    
+    @Column(columnDefinition = "TEXT")
+    private String paperBlueprint;
+    
+    // Highest question id the paper could draw from, so later additions to the bank do not change it
+    @Column
+    private Long paperWatermark;
+    
+    // Comma-separated question ids of the generated paper as served at start; grading uses these
+    @Column(columnDefinition = "TEXT")
+    private String paperQuestionIds;
+    
+    // Set only for adaptive practice attempts
+    @Column
+    private String adaptiveKnowledgePoint;
+    
     @OneToMany(mappedBy = "attempt", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<UserAnswer> answers = new ArrayList<>();
     
@@ -52,4 +76,9 @@ public class UserQuizAttempt {
     
     @UpdateTimestamp
     private LocalDateTime updatedAt;
+    
+    // Generated and adaptive attempts answer their own paper, so their scores are not comparable with the quiz's
+    public boolean usesQuizPaper() {
+        return paperSeed == null && adaptiveKnowledgePoint == null;
+    }
 }
\ No newline at end of file
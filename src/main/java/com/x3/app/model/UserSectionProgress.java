@@ -9,7 +9,8 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "user_section_progress")
+@Table(name = "user_section_progress",
+        uniqueConstraints = @UniqueConstraint(name = "uk_progress_user_section", columnNames = {"user_id", "section_id"}))
 public class UserSectionProgress {
     
     @Id
@@ -33,6 +34,16 @@ public class UserSectionProgress {
     @Column
     private Integer repeatCount = 0;
     
+    // Video playback, written in bulk by the heartbeat flusher
+    @Column
+    private Integer lastPositionSeconds;
+    
+    @Column
+    private Integer maxPositionSeconds;
+    
+    @Column
+    private Integer watchedSeconds = 0;
+    
     @CreationTimestamp
     private LocalDateTime createdAt;
     
@@ -0,0 +1,16 @@
+package com.x3.app.payload.request;
+
+import lombok.Data;
+
+import javax.validation.constraints.NotNull;
+
+@Data
+public class AdaptiveAnswerRequest {
+    
+    @NotNull
+    private Long questionId;
+    
+    private String selectedOption;
+    
+    private Integer timeSpentSeconds;
+}
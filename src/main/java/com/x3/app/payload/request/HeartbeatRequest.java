@@ -0,0 +1,36 @@
+package com.x3.app.payload.request;
+
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Data
+public class HeartbeatRequest {
+    
+    @NotEmpty
+    @Size(max = 100)
+    @Valid
+    private List<Heartbeat> heartbeats;
+    
+    @Data
+    public static class Heartbeat {
+        @NotNull
+        private Long sectionId;
+        
+        @NotNull
+        @Min(0)
+        private Integer positionSeconds;
+        
+        // Seconds actually played since the previous heartbeat
+        @Min(0)
+        private int watchedSeconds;
+        
+        // Client clock in epoch millis, used to order heartbeats that arrive out of order
+        private long clientTimestamp;
+    }
+}
@@ -0,0 +1,27 @@
+package com.x3.app.payload.request;
+
+import com.x3.app.model.Course;
+import lombok.Data;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class PaperBlueprintRequest {
+    
+    @Min(1)
+    @Max(200)
+    private int questionCount;
+    
+    // Percentage of the paper per difficulty, e.g. BASIC=50, INTERMEDIATE=30, ADVANCED=20
+    @NotEmpty
+    private Map<Course.Difficulty, Integer> difficultyMix = new EnumMap<>(Course.Difficulty.class);
+    
+    // Empty means the whole question bank
+    private List<String> knowledgePoints = new ArrayList<>();
+}
@@ -0,0 +1,16 @@
+package com.x3.app.payload.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class AdaptiveStepResponse {
+    
+    private Long attemptId;
+    private double ability;
+    private int answeredCount;
+    
+    // Null once the knowledge point has no unanswered questions left
+    private QuizPaperResponse.PaperQuestion nextQuestion;
+}
@@ -0,0 +1,15 @@
+package com.x3.app.payload.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CourseCompletionResponse {
+    
+    private Long courseId;
+    private int totalSections;
+    private int completedSections;
+    private int skippedSections;
+    private double completionPercent;
+}
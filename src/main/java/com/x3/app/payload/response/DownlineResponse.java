@@ -0,0 +1,43 @@
+package com.x3.app.payload.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DownlineResponse {
+    
+    private Long userId;
+    private long members;
+    private BigDecimal revenue;
+    private List<DepthLevel> levels;
+    private List<DirectReferral> directReferrals;
+    // Time of the graph snapshot the figures come from
+    private LocalDateTime asOf;
+    
+    // Depth 1 is the users the leader invited directly
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DepthLevel {
+        private int depth;
+        private long members;
+        private BigDecimal revenue;
+    }
+    
+    // Branch figures include the referral themselves
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DirectReferral {
+        private Long userId;
+        private long branchMembers;
+        private BigDecimal branchRevenue;
+    }
+}
@@ -0,0 +1,14 @@
+package com.x3.app.payload.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class LeaderboardEntry {
+    
+    private long rank;
+    private Long userId;
+    private String name;
+    private Double score;
+}
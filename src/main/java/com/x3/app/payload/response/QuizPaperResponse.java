@@ -0,0 +1,43 @@
+package com.x3.app.payload.response;
+
+import com.x3.app.model.Course;
+import com.x3.app.model.Question;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuizPaperResponse {
+    
+    private Long quizId;
+    private String title;
+    private Integer timeLimit;
+    private Integer questionCount;
+    private List<PaperQuestion> questions;
+    
+    // Learner-facing view of a question: no correct answer and no explanation
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PaperQuestion {
+        private Long id;
+        private String content;
+        private Question.QuestionType type;
+        private Course.Difficulty difficulty;
+        private String knowledgePoint;
+        private List<PaperOption> options;
+    }
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PaperOption {
+        private Long id;
+        private String content;
+        private Integer orderIndex;
+    }
+}
@@ -0,0 +1,16 @@
+package com.x3.app.payload.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class RecentAttemptSummary {
+    
+    private Long attemptId;
+    private Long quizId;
+    private Double score;
+    private LocalDateTime completedAt;
+}
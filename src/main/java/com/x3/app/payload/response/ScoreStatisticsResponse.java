@@ -0,0 +1,14 @@
+package com.x3.app.payload.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ScoreStatisticsResponse {
+    
+    private long attemptCount;
+    private Double mean;
+    private Double variance;
+    private Double standardDeviation;
+}
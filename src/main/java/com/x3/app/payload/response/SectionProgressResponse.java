@@ -0,0 +1,13 @@
+package com.x3.app.payload.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class SectionProgressResponse {
+    
+    private Long sectionId;
+    private boolean completed;
+    private boolean skipped;
+}
@@ -2,6 +2,7 @@ package com.x3.app.repository;
 
 import com.x3.app.model.AiAssistanceLog;
 import com.x3.app.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -14,10 +15,24 @@ public interface AiAssistanceLogRepository extends JpaRepository<AiAssistanceLog
     List<AiAssistanceLog> findByUser(User user);
     List<AiAssistanceLog> findByUserOrderByCreatedAtDesc(User user);
     List<AiAssistanceLog> findByAnsweredFalse();
+    long countByAnsweredFalse();
+    
+    // Keyset paging over the answered index, which also orders by id
+    List<AiAssistanceLog> findByAnsweredFalseAndIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+    
+    // Rows leased or locked by another claimer are skipped instead of waited on
+    @Query(value = "SELECT * FROM ai_assistance_logs WHERE answered = 0 " +
+            "AND (lease_expires_at IS NULL OR lease_expires_at < ?1) " +
+            "ORDER BY id LIMIT ?2 FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<AiAssistanceLog> findClaimableForUpdate(LocalDateTime now, int limit);
     
     @Query("SELECT COUNT(a) FROM AiAssistanceLog a WHERE a.user = ?1 AND a.createdAt > ?2")
     Long countRecentQueriesByUser(User user, LocalDateTime since);
     
+    // Copied answers are left out so the cache only indexes original answers
+    @Query("SELECT a.id, a.knowledgePoint, a.question FROM AiAssistanceLog a WHERE a.answered = true AND a.sourceLogId IS NULL")
+    List<Object[]> findAnsweredQuestions();
+    
     @Query("SELECT a FROM AiAssistanceLog a WHERE a.knowledgePoint LIKE %?1%")
     List<AiAssistanceLog> findByKnowledgePointContaining(String knowledgePoint);
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.x3.app.repository;
 import com.x3.app.model.Course;
 import com.x3.app.model.CourseSection;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -10,4 +11,7 @@ import java.util.List;
 @Repository
 public interface CourseSectionRepository extends JpaRepository<CourseSection, Long> {
     List<CourseSection> findByCourseOrderByOrderIndexAsc(Course course);
+    
+    @Query("SELECT s.id, s.course.id FROM CourseSection s")
+    List<Object[]> findSectionCourseIds();
 }
\ No newline at end of file
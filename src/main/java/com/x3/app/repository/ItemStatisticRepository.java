@@ -0,0 +1,15 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.ItemStatistic;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ItemStatisticRepository extends JpaRepository<ItemStatistic, Long> {
+    
+    @Query("SELECT s.questionId, s.pValue, s.discriminationIndex, s.responseCount FROM ItemStatistic s")
+    List<Object[]> findCalibrations();
+}
@@ -0,0 +1,28 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.JobLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface JobLockRepository extends JpaRepository<JobLock, String> {
+    
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO job_locks (job_name, owner, locked_until) VALUES (?1, NULL, '1970-01-01 00:00:00')",
+            nativeQuery = true)
+    int ensureExists(String jobName);
+    
+    // Takes an expired lease, or extends the caller's own; zero means another run holds it
+    @Modifying
+    @Query("UPDATE JobLock l SET l.owner = ?2, l.lockedUntil = ?3 " +
+            "WHERE l.jobName = ?1 AND (l.lockedUntil < ?4 OR l.owner = ?2)")
+    int acquire(String jobName, String owner, LocalDateTime lockedUntil, LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE JobLock l SET l.owner = NULL, l.lockedUntil = ?3 WHERE l.jobName = ?1 AND l.owner = ?2")
+    int release(String jobName, String owner, LocalDateTime now);
+}
@@ -0,0 +1,25 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.JobWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+
+@Repository
+public interface JobWatermarkRepository extends JpaRepository<JobWatermark, String> {
+    
+    // Creates the row at zero so every node has something to lock
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO job_watermarks (job_name, last_processed_id, updated_at) VALUES (?1, 0, NOW())",
+            nativeQuery = true)
+    int ensureExists(String jobName);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM JobWatermark w WHERE w.jobName = ?1")
+    Optional<JobWatermark> findForUpdate(String jobName);
+}
@@ -0,0 +1,12 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.LearnerAbility;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface LearnerAbilityRepository extends JpaRepository<LearnerAbility, Long> {
+    Optional<LearnerAbility> findByUserIdAndKnowledgePoint(Long userId, String knowledgePoint);
+}
@@ -0,0 +1,39 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.LearnerNudge;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface LearnerNudgeRepository extends JpaRepository<LearnerNudge, Long> {
+    
+    long countByUserId(Long userId);
+    
+    @Query("SELECT n.courseId FROM LearnerNudge n WHERE n.userId = ?1 ORDER BY n.stalledSince ASC")
+    List<Long> findCourseIdsByUserId(Long userId);
+    
+    // Set-based copy of one primary-key range of stalled progress, so the scan never loads entities
+    @Modifying
+    @Query(value = "INSERT INTO learner_nudges (user_id, course_id, section_id, stalled_since, scanned_at) " +
+            "SELECT usp.user_id, s.course_id, usp.section_id, usp.updated_at, ?4 " +
+            "FROM user_section_progress usp JOIN course_sections s ON s.id = usp.section_id " +
+            "WHERE usp.id > ?1 AND usp.id <= ?2 AND usp.completed = 0 AND usp.updated_at < ?3 " +
+            "ON DUPLICATE KEY UPDATE " +
+            "course_id = VALUES(course_id), " +
+            "stalled_since = VALUES(stalled_since), " +
+            "scanned_at = VALUES(scanned_at)", nativeQuery = true)
+    int upsertStagnantInRange(Long fromId, Long toId, LocalDateTime cutoff, LocalDateTime scannedAt);
+    
+    @Modifying
+    @Query("DELETE FROM LearnerNudge n WHERE n.scannedAt < ?1")
+    int deleteScannedBefore(LocalDateTime scannedAt);
+    
+    @Modifying
+    @Query("DELETE FROM LearnerNudge n WHERE n.userId = ?1 AND n.sectionId = ?2")
+    int deleteByUserIdAndSectionId(Long userId, Long sectionId);
+}
@@ -0,0 +1,66 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.LearnerRiskFlag;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface LearnerRiskFlagRepository extends JpaRepository<LearnerRiskFlag, Long> {
+    List<LearnerRiskFlag> findByActiveTrueOrderByRaisedAtDescIdDesc(Pageable pageable);
+    List<LearnerRiskFlag> findByActiveTrueAndTypeOrderByRaisedAtDescIdDesc(LearnerRiskFlag.Type type, Pageable pageable);
+    List<LearnerRiskFlag> findByActiveTrueAndUserIdInOrderByRaisedAtDescIdDesc(Collection<Long> userIds, Pageable pageable);
+    List<LearnerRiskFlag> findByActiveTrueAndTypeAndUserIdInOrderByRaisedAtDescIdDesc(
+            LearnerRiskFlag.Type type, Collection<Long> userIds, Pageable pageable);
+    
+    // Counts one occurrence; the count restarts when the window began before ?4. Assignments run
+    // in order, so later ones see the new counter but the old active flag.
+    @Modifying
+    @Query(value = "INSERT INTO learner_risk_flags (user_id, flag_type, counter, active, window_started_at, raised_at, updated_at) " +
+            "VALUES (?1, ?2, 1, 1 >= ?3, NOW(), IF(1 >= ?3, NOW(), NULL), NOW()) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "counter = IF(window_started_at IS NULL OR window_started_at < ?4, 1, counter + 1), " +
+            "window_started_at = IF(counter = 1, NOW(), window_started_at), " +
+            "raised_at = IF(active = 0 AND counter >= ?3, NOW(), raised_at), " +
+            "active = (active = 1 OR counter >= ?3), " +
+            "updated_at = NOW()", nativeQuery = true)
+    int recordOccurrence(Long userId, String type, int threshold, LocalDateTime windowStart);
+    
+    @Modifying
+    @Query(value = "INSERT INTO learner_risk_flags (user_id, flag_type, counter, active, raised_at, updated_at) " +
+            "VALUES (?1, ?2, ?3, ?3 >= ?4, IF(?3 >= ?4, NOW(), NULL), NOW()) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "raised_at = IF(?3 >= ?4, IF(active = 1, raised_at, NOW()), NULL), " +
+            "active = ?3 >= ?4, " +
+            "counter = ?3, " +
+            "updated_at = NOW()", nativeQuery = true)
+    int setCounter(Long userId, String type, long counter, int threshold);
+    
+    @Modifying
+    @Query(value = "INSERT INTO learner_risk_flags (user_id, flag_type, counter, active, raised_at, updated_at) " +
+            "SELECT n.user_id, 'STALLED_SECTIONS', COUNT(*), COUNT(*) >= ?1, IF(COUNT(*) >= ?1, NOW(), NULL), NOW() " +
+            "FROM learner_nudges n GROUP BY n.user_id " +
+            "ON DUPLICATE KEY UPDATE " +
+            "raised_at = IF(VALUES(active), IF(active = 1, raised_at, NOW()), NULL), " +
+            "active = VALUES(active), " +
+            "counter = VALUES(counter), " +
+            "updated_at = NOW()", nativeQuery = true)
+    int refreshStalledFromNudges(int threshold);
+    
+    @Modifying
+    @Query(value = "UPDATE learner_risk_flags f SET f.counter = 0, f.active = 0, f.raised_at = NULL, f.updated_at = NOW() " +
+            "WHERE f.flag_type = 'STALLED_SECTIONS' AND f.counter > 0 " +
+            "AND NOT EXISTS (SELECT 1 FROM learner_nudges n WHERE n.user_id = f.user_id)", nativeQuery = true)
+    int clearStalledWithoutNudges();
+    
+    @Modifying
+    @Query("UPDATE LearnerRiskFlag f SET f.counter = 0, f.active = false, f.raisedAt = NULL, f.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE f.userId = ?1 AND f.type = ?2")
+    int reset(Long userId, LearnerRiskFlag.Type type);
+}
@@ -0,0 +1,44 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.OutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    
+    long countByStatus(OutboxEvent.Status status);
+    
+    List<OutboxEvent> findByStatusOrderByIdAsc(OutboxEvent.Status status, Pageable pageable);
+    
+    // Events leased or locked by another relay are skipped instead of waited on
+    @Query(value = "SELECT * FROM outbox_events WHERE status = 'PENDING' AND next_attempt_at <= ?1 " +
+            "ORDER BY id LIMIT ?2 FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxEvent> findClaimableForUpdate(LocalDateTime now, int limit);
+    
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.nextAttemptAt = ?2, e.attempts = e.attempts + 1 WHERE e.id IN ?1")
+    int lease(Collection<Long> ids, LocalDateTime leaseUntil);
+    
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.status = com.x3.app.model.OutboxEvent.Status.DONE, e.processedAt = ?2, " +
+            "e.lastError = NULL WHERE e.id = ?1 AND e.status = com.x3.app.model.OutboxEvent.Status.PENDING")
+    int markDone(Long id, LocalDateTime processedAt);
+    
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.status = ?2, e.nextAttemptAt = ?3, e.lastError = ?4 " +
+            "WHERE e.id = ?1 AND e.status = com.x3.app.model.OutboxEvent.Status.PENDING")
+    int markFailedAttempt(Long id, OutboxEvent.Status status, LocalDateTime nextAttemptAt, String lastError);
+    
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.status = com.x3.app.model.OutboxEvent.Status.PENDING, e.attempts = 0, " +
+            "e.nextAttemptAt = ?2 WHERE e.id = ?1 AND e.status = com.x3.app.model.OutboxEvent.Status.FAILED")
+    int retryFailed(Long id, LocalDateTime nextAttemptAt);
+}
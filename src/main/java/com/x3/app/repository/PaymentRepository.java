@@ -3,11 +3,13 @@ package com.x3.app.repository;
 import com.x3.app.model.Payment;
 import com.x3.app.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +19,37 @@ public interface PaymentRepository extends JpaRepository<Payment, Long> {
     Optional<Payment> findByOrderNumber(String orderNumber);
     List<Payment> findByStatus(Payment.PaymentStatus status);
     
+    // Compare-and-set on status, so only one of several concurrent callbacks applies
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Payment p SET p.status = ?3, p.transactionId = ?4, p.paidAt = ?5, p.validUntil = ?6, " +
+            "p.version = p.version + 1, p.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE p.orderNumber = ?1 AND p.status IN ?2")
+    int transitionStatus(String orderNumber, Collection<Payment.PaymentStatus> expected, Payment.PaymentStatus status,
+                         String transactionId, LocalDateTime paidAt, LocalDateTime validUntil);
+    
+    @Modifying
+    @Query("UPDATE Payment p SET p.status = com.x3.app.model.Payment.PaymentStatus.EXPIRED, " +
+            "p.version = p.version + 1, p.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE p.id IN ?1 AND p.status = com.x3.app.model.Payment.PaymentStatus.PENDING")
+    int expirePending(Collection<Long> ids);
+    
+    @Query("SELECT p.id, p.createdAt FROM Payment p WHERE p.status = 'PENDING'")
+    List<Object[]> findPendingPaymentTimes();
+    
+    @Query("SELECT MAX(p.id) FROM Payment p")
+    Long findMaxId();
+    
+    @Query("SELECT COALESCE(p.paidAt, p.createdAt), pkg.id, p.paymentMethod, p.amount FROM Payment p " +
+            "LEFT JOIN p.subscriptionPackage pkg WHERE p.id > ?1 AND p.id <= ?2 AND p.status = 'PAID'")
+    List<Object[]> findPaidFactsInRange(long fromId, long toId);
+    
+    @Query("SELECT p FROM Payment p WHERE p.user.id = ?1 AND p.status = 'PAID' AND p.validUntil IS NOT NULL " +
+            "ORDER BY p.validUntil DESC")
+    List<Payment> findPaidWithValidityByUserId(Long userId);
+    
+    @Query("SELECT p.user.id, SUM(p.amount) FROM Payment p WHERE p.status = 'PAID' GROUP BY p.user.id")
+    List<Object[]> sumPaidAmountByUser();
+    
     @Query("SELECT p FROM Payment p WHERE p.createdAt BETWEEN ?1 AND ?2")
     List<Payment> findByDateRange(LocalDateTime startDate, LocalDateTime endDate);
     
@@ -1,18 +1,59 @@
 package com.x3.app.repository;
 
+import com.x3.app.model.Payment;
 import com.x3.app.model.Promotion;
 import com.x3.app.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface PromotionRepository extends JpaRepository<Promotion, Long> {
     List<Promotion> findByUser(User user);
     List<Promotion> findByUserAndPaid(User user, boolean paid);
+    boolean existsByPayment(Payment payment);
+    boolean existsByUserAndPaid(User user, boolean paid);
+    List<Promotion> findBySettlementBatchId(Long settlementBatchId);
+    
+    @Query("SELECT DISTINCT p.user.id FROM Promotion p WHERE p.paid = false AND p.user.id > ?1 ORDER BY p.user.id")
+    List<Long> findUnpaidPromoterIdsAfter(Long afterUserId, Pageable pageable);
+    
+    @Modifying
+    @Query("UPDATE Promotion p SET p.paid = true, p.paidAt = ?2, p.settlementBatchId = ?3, " +
+            "p.updatedAt = CURRENT_TIMESTAMP WHERE p.user.id IN ?1 AND p.paid = false")
+    int settleUnpaid(Collection<Long> userIds, LocalDateTime paidAt, Long settlementBatchId);
+    
+    /**
+     * Assigns a promoter's outstanding clawbacks to the batch when the commission the batch
+     * settled for them covers all of them; otherwise they wait for a later batch, so a payout
+     * never goes negative.
+     */
+    @Modifying
+    @Query(value = "UPDATE promotions p " +
+            "JOIN (SELECT user_id, SUM(commission_amount) AS earned FROM promotions " +
+            "WHERE settlement_batch_id = ?2 AND user_id IN ?1 GROUP BY user_id) e ON e.user_id = p.user_id " +
+            "JOIN (SELECT user_id, SUM(commission_amount) AS owed FROM promotions " +
+            "WHERE clawed_back_at IS NOT NULL AND clawback_batch_id IS NULL AND user_id IN ?1 GROUP BY user_id) o " +
+            "ON o.user_id = p.user_id " +
+            "SET p.clawback_batch_id = ?2, p.updated_at = NOW() " +
+            "WHERE p.clawed_back_at IS NOT NULL AND p.clawback_batch_id IS NULL AND e.earned >= o.owed", nativeQuery = true)
+    int deductClawbacks(Collection<Long> userIds, Long settlementBatchId);
+    
+    @Modifying
+    @Query("DELETE FROM Promotion p WHERE p.payment.id = ?1 AND p.paid = false")
+    int deleteUnpaidByPaymentId(Long paymentId);
+    
+    @Modifying
+    @Query("UPDATE Promotion p SET p.clawedBackAt = ?2, p.updatedAt = CURRENT_TIMESTAMP " +
+            "WHERE p.payment.id = ?1 AND p.paid = true AND p.clawedBackAt IS NULL")
+    int markClawedBack(Long paymentId, LocalDateTime clawedBackAt);
     
     @Query("SELECT SUM(p.commissionAmount) FROM Promotion p WHERE p.user = ?1 AND p.paid = false")
     BigDecimal sumUnpaidCommission(User user);
@@ -7,11 +7,21 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface QuestionRepository extends JpaRepository<Question, Long> {
     List<Question> findByQuiz(Quiz quiz);
+    
+    @Query("SELECT DISTINCT q FROM Question q LEFT JOIN FETCH q.options WHERE q.quiz.id = ?1")
+    List<Question> findByQuizIdWithOptions(Long quizId);
+    
+    @Query("SELECT DISTINCT q FROM Question q LEFT JOIN FETCH q.options WHERE q.id IN ?1")
+    List<Question> findByIdInWithOptions(Collection<Long> ids);
+    
+    @Query("SELECT q.id, q.difficulty, q.knowledgePoint FROM Question q")
+    List<Object[]> findAllQuestionKeys();
     List<Question> findByDifficulty(Course.Difficulty difficulty);
     List<Question> findByKnowledgePointContaining(String knowledgePoint);
     
@@ -0,0 +1,34 @@
+package com.x3.app.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class ReferralClosureBatchRepository {
+    
+    private static final String INSERT_PAIR =
+            "INSERT IGNORE INTO referral_closure (ancestor_id, descendant_id, depth) VALUES (?, ?, ?)";
+    
+    private static final String DELETE_ANCESTORS =
+            "DELETE FROM referral_closure WHERE descendant_id = ?";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    /**
+     * Writes (ancestor id, descendant id, depth) rows in one JDBC batch, keeping existing pairs.
+     */
+    public int[] insertPairs(List<Object[]> rows) {
+        return jdbcTemplate.batchUpdate(INSERT_PAIR, rows);
+    }
+    
+    /**
+     * Deletes every row whose descendant is one of the given users, self rows included.
+     */
+    public int[] deleteAncestors(List<Object[]> descendantIds) {
+        return jdbcTemplate.batchUpdate(DELETE_ANCESTORS, descendantIds);
+    }
+}
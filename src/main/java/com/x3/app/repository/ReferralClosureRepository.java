@@ -0,0 +1,66 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.ReferralClosure;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ReferralClosureRepository extends JpaRepository<ReferralClosure, Long> {
+    
+    boolean existsByAncestorIdAndDescendantId(Long ancestorId, Long descendantId);
+    
+    @Query("SELECT r.ancestorId FROM ReferralClosure r WHERE r.descendantId = ?1 AND r.depth > 0 ORDER BY r.depth")
+    List<Long> findAncestorIds(Long descendantId);
+    
+    // (depth, members) of the live downline, including signups since the last graph rebuild
+    @Query("SELECT r.depth, COUNT(r) FROM ReferralClosure r WHERE r.ancestorId = ?1 AND r.depth > 0 " +
+            "GROUP BY r.depth ORDER BY r.depth")
+    List<Object[]> countDownlineByDepth(Long ancestorId);
+    
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO referral_closure (ancestor_id, descendant_id, depth) VALUES (?1, ?1, 0)",
+            nativeQuery = true)
+    int insertSelf(Long userId);
+    
+    // The direct link is written on its own in case the inviter predates the closure table
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO referral_closure (ancestor_id, descendant_id, depth) VALUES (?2, ?1, 1)",
+            nativeQuery = true)
+    int insertInviter(Long userId, Long inviterId);
+    
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO referral_closure (ancestor_id, descendant_id, depth) " +
+            "SELECT ancestor_id, ?1, depth + 1 FROM referral_closure WHERE descendant_id = ?2 AND depth > 0",
+            nativeQuery = true)
+    int insertInviterAncestors(Long userId, Long inviterId);
+    
+    @Query("SELECT r.descendantId FROM ReferralClosure r WHERE r.ancestorId = ?1 AND r.depth > 0")
+    List<Long> findDescendantIds(Long ancestorId);
+    
+    // Pairs that ran through a removed user get one level shorter
+    @Modifying
+    @Query("UPDATE ReferralClosure r SET r.depth = r.depth - 1 WHERE r.ancestorId IN ?1 AND r.descendantId IN ?2")
+    int shortenPaths(Collection<Long> ancestorIds, Collection<Long> descendantIds);
+    
+    // Unlinks a moved subtree from the ancestors it had above the moved user
+    @Modifying
+    @Query("DELETE FROM ReferralClosure r WHERE r.ancestorId IN ?1 AND r.descendantId IN ?2")
+    int deletePaths(Collection<Long> ancestorIds, Collection<Long> descendantIds);
+    
+    // Links a moved subtree under the new inviter and every ancestor of that inviter
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO referral_closure (ancestor_id, descendant_id, depth) " +
+            "SELECT a.ancestor_id, d.descendant_id, a.depth + d.depth + 1 FROM referral_closure a " +
+            "JOIN referral_closure d ON d.ancestor_id = ?1 AND d.descendant_id IN ?3 WHERE a.descendant_id = ?2",
+            nativeQuery = true)
+    int insertSubtreePaths(Long userId, Long inviterId, Collection<Long> descendantIds);
+    
+    @Modifying
+    @Query("DELETE FROM ReferralClosure r WHERE r.ancestorId = ?1 OR r.descendantId = ?1")
+    int deleteByUserId(Long userId);
+}
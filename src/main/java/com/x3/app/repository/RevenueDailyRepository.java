@@ -0,0 +1,38 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.RevenueDaily;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface RevenueDailyRepository extends JpaRepository<RevenueDaily, Long> {
+    
+    // Negative deltas take refunds back out of the day they were paid
+    @Modifying
+    @Query(value = "INSERT INTO revenue_daily (day, package_id, payment_method, amount_cents, payment_count, updated_at) " +
+            "VALUES (?1, ?2, ?3, ?4, ?5, NOW()) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "amount_cents = amount_cents + VALUES(amount_cents), " +
+            "payment_count = payment_count + VALUES(payment_count), " +
+            "updated_at = NOW()", nativeQuery = true)
+    int addRevenue(LocalDate day, Long packageId, String paymentMethod, long amountCents, long paymentCount);
+    
+    @Query("SELECT r.day, SUM(r.amountCents), SUM(r.paymentCount) FROM RevenueDaily r GROUP BY r.day ORDER BY r.day")
+    List<Object[]> findDailyTotals();
+    
+    // Locks past rollups, and the gaps between them, so payment events for those days wait for the reconciliation
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM RevenueDaily r WHERE r.day < ?1")
+    List<RevenueDaily> findByDayBeforeForUpdate(LocalDate day);
+    
+    @Modifying
+    @Query("DELETE FROM RevenueDaily r WHERE r.day < ?1")
+    int deleteByDayBefore(LocalDate day);
+}
@@ -0,0 +1,41 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.ScoreAggregate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ScoreAggregateRepository extends JpaRepository<ScoreAggregate, Long> {
+    
+    @Modifying
+    @Query(value = "INSERT INTO score_aggregates (scope, scope_key, attempt_count, score_sum, score_square_sum, updated_at) " +
+            "VALUES (?1, ?2, 1, ?3, ?3 * ?3, NOW()) " +
+            "ON DUPLICATE KEY UPDATE attempt_count = attempt_count + 1, " +
+            "score_sum = score_sum + VALUES(score_sum), " +
+            "score_square_sum = score_square_sum + VALUES(score_square_sum), " +
+            "updated_at = NOW()", nativeQuery = true)
+    int addScore(String scope, String scopeKey, double score);
+    
+    @Modifying
+    @Query(value = "DELETE FROM score_aggregates", nativeQuery = true)
+    int deleteAllAggregates();
+    
+    // Rebuilds count only attempts on the quiz's own paper, like recordScore
+    @Modifying
+    @Query(value = "INSERT INTO score_aggregates (scope, scope_key, attempt_count, score_sum, score_square_sum, updated_at) " +
+            "SELECT 'QUIZ', CAST(a.quiz_id AS CHAR), COUNT(*), SUM(a.score), SUM(a.score * a.score), NOW() " +
+            "FROM user_quiz_attempts a WHERE a.score IS NOT NULL " +
+            "AND a.paper_seed IS NULL AND a.adaptive_knowledge_point IS NULL GROUP BY a.quiz_id", nativeQuery = true)
+    int rebuildQuizAggregates();
+    
+    @Modifying
+    @Query(value = "INSERT INTO score_aggregates (scope, scope_key, attempt_count, score_sum, score_square_sum, updated_at) " +
+            "SELECT 'CATEGORY_LEVEL_DIFFICULTY', CONCAT(c.category, ':', c.level, ':', q.difficulty), " +
+            "COUNT(*), SUM(a.score), SUM(a.score * a.score), NOW() " +
+            "FROM user_quiz_attempts a JOIN quizzes q ON q.id = a.quiz_id JOIN courses c ON c.id = q.course_id " +
+            "WHERE a.score IS NOT NULL AND a.paper_seed IS NULL AND a.adaptive_knowledge_point IS NULL " +
+            "GROUP BY c.category, c.level, q.difficulty", nativeQuery = true)
+    int rebuildCategoryAggregates();
+}
@@ -0,0 +1,71 @@
+package com.x3.app.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+@RequiredArgsConstructor
+public class SectionProgressBatchRepository {
+    
+    private static final String UPSERT_PLAYBACK =
+            "INSERT INTO user_section_progress (user_id, section_id, completed, skipped, repeat_count, " +
+            "last_position_seconds, max_position_seconds, watched_seconds, created_at, updated_at) " +
+            "VALUES (?, ?, 0, 0, 0, ?, ?, ?, NOW(), NOW()) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "last_position_seconds = VALUES(last_position_seconds), " +
+            "max_position_seconds = GREATEST(COALESCE(max_position_seconds, 0), VALUES(max_position_seconds)), " +
+            "watched_seconds = COALESCE(watched_seconds, 0) + VALUES(watched_seconds), " +
+            "updated_at = NOW()";
+    
+    private static final String COUNT_UNIQUE_KEY =
+            "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() " +
+            "AND table_name = 'user_section_progress' AND index_name = 'uk_progress_user_section'";
+    
+    // Folds each duplicate group into its newest row: flags and positions are kept, counters summed
+    private static final String MERGE_DUPLICATES =
+            "UPDATE user_section_progress p JOIN (" +
+            "SELECT MAX(id) AS keep_id, MAX(completed) AS completed, MAX(skipped) AS skipped, " +
+            "SUM(COALESCE(repeat_count, 0)) AS repeat_count, MAX(max_position_seconds) AS max_position_seconds, " +
+            "SUM(COALESCE(watched_seconds, 0)) AS watched_seconds " +
+            "FROM user_section_progress GROUP BY user_id, section_id HAVING COUNT(*) > 1) d ON p.id = d.keep_id " +
+            "SET p.completed = d.completed, p.skipped = d.skipped, p.repeat_count = d.repeat_count, " +
+            "p.max_position_seconds = d.max_position_seconds, p.watched_seconds = d.watched_seconds";
+    
+    private static final String DELETE_DUPLICATES =
+            "DELETE p FROM user_section_progress p JOIN (" +
+            "SELECT user_id, section_id, MAX(id) AS keep_id FROM user_section_progress " +
+            "GROUP BY user_id, section_id HAVING COUNT(*) > 1) d " +
+            "ON p.user_id = d.user_id AND p.section_id = d.section_id AND p.id <> d.keep_id";
+    
+    private static final String ADD_UNIQUE_KEY =
+            "ALTER TABLE user_section_progress ADD CONSTRAINT uk_progress_user_section UNIQUE (user_id, section_id)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    /**
+     * Writes playback rows as (user id, section id, last position, max position, watched seconds)
+     * in one JDBC batch.
+     */
+    public int[] upsertPlayback(List<Object[]> rows) {
+        return jdbcTemplate.batchUpdate(UPSERT_PLAYBACK, rows);
+    }
+    
+    public boolean hasUniqueKey() {
+        Integer count = jdbcTemplate.queryForObject(COUNT_UNIQUE_KEY, Integer.class);
+        return count != null && count > 0;
+    }
+    
+    /**
+     * Merges duplicate (user_id, section_id) rows into the newest one, deletes the rest and adds
+     * the unique key. Returns the number of rows deleted.
+     */
+    public int deduplicateAndAddUniqueKey() {
+        jdbcTemplate.update(MERGE_DUPLICATES);
+        int deleted = jdbcTemplate.update(DELETE_DUPLICATES);
+        jdbcTemplate.execute(ADD_UNIQUE_KEY);
+        return deleted;
+    }
+}
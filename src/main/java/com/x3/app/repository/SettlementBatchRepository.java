@@ -0,0 +1,13 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.SettlementBatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SettlementBatchRepository extends JpaRepository<SettlementBatch, Long> {
+    
+    List<SettlementBatch> findTop20ByOrderByIdDesc();
+}
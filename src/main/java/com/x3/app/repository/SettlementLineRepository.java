@@ -0,0 +1,37 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.SettlementLine;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SettlementLineRepository extends JpaRepository<SettlementLine, Long> {
+    
+    // Totals come from the rows the batch itself marked paid or deducted, so late-arriving promotions are not counted
+    @Modifying
+    @Query(value = "INSERT INTO settlement_lines (batch_id, user_id, promotion_count, amount, clawback_count, clawback_amount) " +
+            "SELECT ?1, user_id, " +
+            "SUM(IF(settlement_batch_id = ?1, 1, 0)), " +
+            "SUM(IF(settlement_batch_id = ?1, commission_amount, 0)) - SUM(IF(clawback_batch_id = ?1, commission_amount, 0)), " +
+            "SUM(IF(clawback_batch_id = ?1, 1, 0)), " +
+            "SUM(IF(clawback_batch_id = ?1, commission_amount, 0)) FROM promotions " +
+            "WHERE (settlement_batch_id = ?1 OR clawback_batch_id = ?1) AND user_id IN ?2 GROUP BY user_id", nativeQuery = true)
+    int insertTotals(Long batchId, Collection<Long> userIds);
+    
+    // (users, promotions, amount, clawbacks, clawback amount) of the batch
+    @Query("SELECT COUNT(l), SUM(l.promotionCount), SUM(l.amount), SUM(l.clawbackCount), SUM(l.clawbackAmount) " +
+            "FROM SettlementLine l WHERE l.batchId = ?1")
+    List<Object[]> summarize(Long batchId);
+    
+    // (user id, name, phone, promotions, amount, clawbacks, clawback amount) keyset page of the payout file
+    @Query("SELECT l.userId, u.name, u.phone, l.promotionCount, l.amount, l.clawbackCount, l.clawbackAmount " +
+            "FROM SettlementLine l " +
+            "LEFT JOIN User u ON u.id = l.userId WHERE l.batchId = ?1 AND l.userId > ?2 ORDER BY l.userId")
+    List<Object[]> findPayoutRows(Long batchId, Long afterUserId, Pageable pageable);
+}
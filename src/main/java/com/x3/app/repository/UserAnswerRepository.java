@@ -0,0 +1,29 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.UserAnswer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UserAnswerRepository extends JpaRepository<UserAnswer, Long> {
+    
+    @Query("SELECT ua.question.id FROM UserAnswer ua WHERE ua.attempt.id = ?1")
+    List<Long> findQuestionIdsByAttemptId(Long attemptId);
+    
+    // Highest answer id above ?1 whose attempt ended at or before ?2
+    @Query("SELECT MAX(ua.id) FROM UserAnswer ua JOIN ua.attempt a WHERE ua.id > ?1 AND a.endTime <= ?2")
+    Long findMaxSettledId(long afterId, LocalDateTime endedBefore);
+    
+    // Lowest answer id of attempts that are still open and started after ?1
+    @Query("SELECT MIN(ua.id) FROM UserAnswer ua JOIN ua.attempt a WHERE a.endTime IS NULL AND a.startTime > ?1")
+    Long findMinOpenAttemptAnswerId(LocalDateTime startedAfter);
+    
+    // Rows are (question id, correct, user answer, attempt score) for answers in (fromId, toId]
+    @Query("SELECT ua.question.id, ua.isCorrect, ua.userAnswer, a.score FROM UserAnswer ua JOIN ua.attempt a " +
+            "WHERE ua.id > ?1 AND ua.id <= ?2 AND a.score IS NOT NULL")
+    List<Object[]> findAnswerFactsInRange(long fromId, long toId);
+}
@@ -0,0 +1,44 @@
+package com.x3.app.repository;
+
+import com.x3.app.model.UserEntitlement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UserEntitlementRepository extends JpaRepository<UserEntitlement, Long> {
+    
+    List<UserEntitlement> findByValidUntilBetweenOrderByValidUntilAsc(LocalDateTime from, LocalDateTime to);
+    
+    // Keeps the later expiry; package_id is assigned first so it still compares with the old value
+    @Modifying
+    @Query(value = "INSERT INTO user_entitlements (user_id, package_id, valid_until, updated_at) " +
+            "VALUES (?1, ?2, ?3, NOW()) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "package_id = IF(VALUES(valid_until) > valid_until, VALUES(package_id), package_id), " +
+            "valid_until = GREATEST(valid_until, VALUES(valid_until)), " +
+            "updated_at = NOW()", nativeQuery = true)
+    int extend(Long userId, Long packageId, LocalDateTime validUntil);
+    
+    @Modifying
+    @Query(value = "INSERT INTO user_entitlements (user_id, package_id, valid_until, updated_at) " +
+            "SELECT p.user_id, p.package_id, p.valid_until, NOW() FROM payments p " +
+            "WHERE p.status = 'PAID' AND p.valid_until IS NOT NULL " +
+            "ON DUPLICATE KEY UPDATE " +
+            "package_id = IF(VALUES(valid_until) > valid_until, VALUES(package_id), package_id), " +
+            "valid_until = GREATEST(valid_until, VALUES(valid_until)), " +
+            "updated_at = NOW()", nativeQuery = true)
+    int extendFromPayments();
+    
+    @Modifying
+    @Query("DELETE FROM UserEntitlement e WHERE e.userId = ?1")
+    int deleteEntitlement(Long userId);
+    
+    @Modifying
+    @Query("DELETE FROM UserEntitlement e")
+    int deleteAllEntitlements();
+}
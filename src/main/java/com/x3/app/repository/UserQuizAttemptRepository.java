@@ -1,12 +1,18 @@
 package com.x3.app.repository;
 
+import com.x3.app.model.Course;
 import com.x3.app.model.Quiz;
 import com.x3.app.model.User;
 import com.x3.app.model.UserQuizAttempt;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -14,6 +20,7 @@ public interface UserQuizAttemptRepository extends JpaRepository<UserQuizAttempt
     List<UserQuizAttempt> findByUser(User user);
     List<UserQuizAttempt> findByUserOrderByCreatedAtDesc(User user);
     List<UserQuizAttempt> findByUserAndQuiz(User user, Quiz quiz);
+    List<UserQuizAttempt> findTop10ByUserAndScoreIsNotNullOrderByEndTimeDesc(User user);
     
     @Query("SELECT COUNT(uqa) FROM UserQuizAttempt uqa WHERE uqa.user = ?1 AND uqa.score < 60")
     Long countLowScoreAttempts(User user);
@@ -21,6 +28,32 @@ public interface UserQuizAttemptRepository extends JpaRepository<UserQuizAttempt
     @Query("SELECT uqa FROM UserQuizAttempt uqa WHERE uqa.user = ?1 ORDER BY uqa.createdAt DESC LIMIT 3")
     List<UserQuizAttempt> findLast3AttemptsByUser(User user);
     
+    // Best score per learner and quiz on the quiz's own paper; generated and adaptive attempts are not ranked
+    @Query("SELECT uqa.user.id, q.id, c.id, c.category, c.level, MAX(uqa.score) FROM UserQuizAttempt uqa " +
+            "JOIN uqa.quiz q LEFT JOIN q.course c WHERE uqa.score IS NOT NULL " +
+            "AND uqa.paperSeed IS NULL AND uqa.adaptiveKnowledgePoint IS NULL " +
+            "GROUP BY uqa.user.id, q.id, c.id, c.category, c.level")
+    List<Object[]> findBestScoresByUserAndQuiz();
+    
+    // Latest quiz start per learner and course as (user id, course id, last start time)
+    @Query("SELECT uqa.user.id, q.course.id, MAX(uqa.startTime) FROM UserQuizAttempt uqa JOIN uqa.quiz q " +
+            "WHERE q.course IS NOT NULL GROUP BY uqa.user.id, q.course.id")
+    List<Object[]> findLastActivityByUserAndCourse();
+    
+    // Open timed attempts as (id, start time, time limit in minutes); adaptive practice is untimed
+    @Query("SELECT uqa.id, uqa.startTime, q.timeLimit FROM UserQuizAttempt uqa JOIN uqa.quiz q " +
+            "WHERE uqa.endTime IS NULL AND uqa.adaptiveKnowledgePoint IS NULL ORDER BY uqa.startTime")
+    List<Object[]> findOpenTimedAttempts();
+    
+    // Claims the completion; a concurrent submit or expiry waits on the row lock and then matches nothing
+    @Modifying
+    @Query("UPDATE UserQuizAttempt uqa SET uqa.endTime = ?2 WHERE uqa.id = ?1 AND uqa.endTime IS NULL")
+    int markEnded(Long id, LocalDateTime endTime);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT uqa FROM UserQuizAttempt uqa WHERE uqa.id IN ?1 AND uqa.endTime IS NULL")
+    List<UserQuizAttempt> findOpenAttemptsForUpdate(Collection<Long> ids);
+    
     @Query("SELECT AVG(uqa.score) FROM UserQuizAttempt uqa WHERE uqa.quiz.course.category = ?1 AND uqa.quiz.course.level = ?2")
     Double getAverageScoreByCategoryAndLevel(Course.Category category, Course.Level level);
 }
\ No newline at end of file
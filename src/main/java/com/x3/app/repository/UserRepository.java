@@ -2,8 +2,11 @@ package com.x3.app.repository;
 
 import com.x3.app.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +14,12 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByPhone(String phone);
     boolean existsByPhone(String phone);
     Optional<User> findByPromotionCode(String promotionCode);
+    
+    @Query("SELECT u.id, u.invitedBy FROM User u ORDER BY u.id")
+    List<Object[]> findReferralEdges();
+    
+    // Moves a deleted user's direct referrals up to that user's own inviter
+    @Modifying
+    @Query("UPDATE User u SET u.invitedBy = ?2 WHERE u.invitedBy = ?1 AND u.id <> ?1")
+    int reassignInviter(Long fromInviterId, Long toInviterId);
 }
\ No newline at end of file
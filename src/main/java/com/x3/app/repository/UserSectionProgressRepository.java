@@ -4,6 +4,7 @@ import com.x3.app.model.CourseSection;
 import com.x3.app.model.User;
 import com.x3.app.model.UserSectionProgress;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
@@ -16,6 +17,30 @@ public interface UserSectionProgressRepository extends JpaRepository<UserSection
     Optional<UserSectionProgress> findByUserAndSection(User user, CourseSection section);
     List<UserSectionProgress> findByUser(User user);
     
+    // One round trip; a plain revisit (neither completed nor skipped) counts as a repeat
+    @Modifying
+    @Query(value = "INSERT INTO user_section_progress (user_id, section_id, completed, skipped, repeat_count, created_at, updated_at) " +
+            "VALUES (?1, ?2, ?3, ?4, 0, NOW(), NOW()) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "repeat_count = IF(VALUES(completed) = 0 AND VALUES(skipped) = 0, COALESCE(repeat_count, 0) + 1, repeat_count), " +
+            "completed = VALUES(completed), " +
+            "skipped = VALUES(skipped), " +
+            "updated_at = NOW()", nativeQuery = true)
+    int upsertProgress(Long userId, Long sectionId, boolean completed, boolean skipped);
+    
+    @Query("SELECT usp.section.id, usp.completed, usp.skipped FROM UserSectionProgress usp WHERE usp.user.id = ?1")
+    List<Object[]> findSectionFlagsByUserId(Long userId);
+    
+    @Query("SELECT usp.lastPositionSeconds FROM UserSectionProgress usp WHERE usp.user.id = ?1 AND usp.section.id = ?2")
+    Optional<Integer> findLastPositionSeconds(Long userId, Long sectionId);
+    
+    @Query("SELECT usp.user.id, s.course.id, MAX(usp.updatedAt) FROM UserSectionProgress usp JOIN usp.section s " +
+            "GROUP BY usp.user.id, s.course.id")
+    List<Object[]> findLastActivityByUserAndCourse();
+    
+    @Query("SELECT MAX(usp.id) FROM UserSectionProgress usp")
+    Long findMaxId();
+    
     @Query("SELECT usp FROM UserSectionProgress usp WHERE usp.user = ?1 AND usp.updatedAt < ?2 AND usp.completed = false")
     List<UserSectionProgress> findStagnantProgress(User user, LocalDateTime cutoffDate);
     
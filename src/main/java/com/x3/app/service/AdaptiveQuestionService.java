@@ -0,0 +1,398 @@
+package com.x3.app.service;
+
+import com.x3.app.model.Course;
+import com.x3.app.model.LearnerAbility;
+import com.x3.app.model.Question;
+import com.x3.app.model.QuestionOption;
+import com.x3.app.model.UserAnswer;
+import com.x3.app.model.UserQuizAttempt;
+import com.x3.app.repository.ItemStatisticRepository;
+import com.x3.app.repository.LearnerAbilityRepository;
+import com.x3.app.repository.QuestionRepository;
+import com.x3.app.repository.UserAnswerRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Adaptive practice: picks each next question near the learner's current ability estimate
+ * using a 2PL IRT model. Item parameters are held in memory as primitive arrays sorted by
+ * difficulty per knowledge point, so a selection is a binary search plus a short walk.
+ */
+@Service
+@RequiredArgsConstructor
+public class AdaptiveQuestionService {
+    
+    // Item statistics below this many responses are too noisy to replace the authored difficulty
+    private static final int MIN_CALIBRATION_RESPONSES = 30;
+    private static final int CANDIDATES = 3;
+    private static final double MAX_THETA = 4.0;
+    private static final long SESSION_IDLE_MILLIS = 2 * 60 * 60 * 1000L;
+    
+    private final QuestionRepository questionRepository;
+    private final ItemStatisticRepository itemStatisticRepository;
+    private final LearnerAbilityRepository abilityRepository;
+    private final UserAnswerRepository userAnswerRepository;
+    
+    private volatile ItemBank itemBank;
+    private volatile boolean itemBankStale = true;
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    
+    public Optional<Long> selectNextQuestion(UserQuizAttempt attempt) {
+        ItemBank bank = currentItemBank();
+        Session session = session(attempt);
+        
+        synchronized (session) {
+            session.touch();
+            KnowledgePointItems items = bank.byKnowledgePoint.get(session.knowledgePoint);
+            if (items == null) {
+                return Optional.empty();
+            }
+            
+            // Walk outwards from the closest difficulty and pick randomly among the nearest few
+            long[] candidates = new long[CANDIDATES];
+            int found = 0;
+            int hi = lowerBound(items.difficulties, session.theta);
+            int lo = hi - 1;
+            while (found < CANDIDATES && (lo >= 0 || hi < items.difficulties.length)) {
+                boolean takeHigh = lo < 0 || (hi < items.difficulties.length
+                        && items.difficulties[hi] - session.theta <= session.theta - items.difficulties[lo]);
+                int index = takeHigh ? hi++ : lo--;
+                if (!session.asked.contains(items.questionIds[index])) {
+                    candidates[found++] = items.questionIds[index];
+                }
+            }
+            
+            if (found == 0) {
+                session.lastServed = null;
+                return Optional.empty();
+            }
+            session.lastServed = candidates[ThreadLocalRandom.current().nextInt(found)];
+            return Optional.of(session.lastServed);
+        }
+    }
+    
+    /**
+     * Grades an answer against the stored key, applies the IRT ability update and returns the
+     * new estimate. The answer row and the learner's ability are written in the caller's
+     * transaction; the session only takes the update once that transaction commits.
+     */
+    @Transactional
+    public double recordAnswer(UserQuizAttempt attempt, Long questionId, String selectedOption,
+                               Integer timeSpentSeconds) {
+        ItemBank bank = currentItemBank();
+        Session session = session(attempt);
+        
+        Question question = questionRepository.findByIdInWithOptions(Collections.singletonList(questionId)).stream()
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Question not found: " + questionId));
+        if (!session.knowledgePoint.equals(question.getKnowledgePoint() != null ? question.getKnowledgePoint() : "")) {
+            throw new RuntimeException("Question does not belong to this attempt's knowledge point: " + questionId);
+        }
+        boolean correct = isCorrect(question, selectedOption);
+        
+        int index = Arrays.binarySearch(bank.questionIds, questionId);
+        double difficulty = index >= 0 ? bank.difficulties[index] : 0;
+        double discrimination = index >= 0 ? bank.discriminations[index] : 1;
+        
+        double theta;
+        int responses;
+        synchronized (session) {
+            session.touch();
+            if (session.asked.contains(questionId)) {
+                throw new RuntimeException("Question already answered in this attempt: " + questionId);
+            }
+            // A session rebuilt after a restart has not served anything yet, so any unanswered item is accepted
+            if (session.lastServed != null && !session.lastServed.equals(questionId)) {
+                throw new RuntimeException("Question was not served as the current item: " + questionId);
+            }
+            // Claimed so a concurrent submit of the same item fails; handed back if the transaction rolls back
+            session.lastServed = null;
+            
+            double probability = 1 / (1 + Math.exp(-discrimination * (session.theta - difficulty)));
+            double gain = Math.max(0.1, 1 / Math.sqrt(1 + session.responses));
+            theta = clamp(session.theta + gain * discrimination * ((correct ? 1 : 0) - probability));
+            responses = session.responses + 1;
+        }
+        
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (session) {
+                    if (status == STATUS_COMMITTED) {
+                        session.asked.add(questionId);
+                        session.theta = theta;
+                        session.responses = responses;
+                    } else if (session.lastServed == null) {
+                        session.lastServed = questionId;
+                    }
+                }
+            }
+        });
+        
+        UserAnswer answer = new UserAnswer();
+        answer.setAttempt(attempt);
+        answer.setQuestion(question);
+        answer.setUserAnswer(selectedOption);
+        answer.setCorrect(correct);
+        answer.setTimeSpentSeconds(timeSpentSeconds != null ? timeSpentSeconds : 0);
+        userAnswerRepository.save(answer);
+        
+        LearnerAbility ability = abilityRepository
+                .findByUserIdAndKnowledgePoint(session.userId, session.knowledgePoint)
+                .orElseGet(() -> {
+                    LearnerAbility created = new LearnerAbility();
+                    created.setUserId(session.userId);
+                    created.setKnowledgePoint(session.knowledgePoint);
+                    return created;
+                });
+        ability.setTheta(theta);
+        ability.setResponseCount(responses);
+        abilityRepository.save(ability);
+        
+        return theta;
+    }
+    
+    public double getAbility(UserQuizAttempt attempt) {
+        Session session = session(attempt);
+        synchronized (session) {
+            return session.theta;
+        }
+    }
+    
+    public int getAnsweredCount(UserQuizAttempt attempt) {
+        Session session = session(attempt);
+        synchronized (session) {
+            return session.asked.size();
+        }
+    }
+    
+    public void endSession(Long attemptId) {
+        sessions.remove(attemptId);
+    }
+    
+    public void invalidateItemBank() {
+        itemBankStale = true;
+    }
+    
+    @Scheduled(fixedDelayString = "${quiz.adaptive.refresh-ms:600000}")
+    public void refresh() {
+        rebuildItemBank();
+        long cutoff = System.currentTimeMillis() - SESSION_IDLE_MILLIS;
+        sessions.values().removeIf(session -> session.lastTouched < cutoff);
+    }
+    
+    private Session session(UserQuizAttempt attempt) {
+        if (attempt.getAdaptiveKnowledgePoint() == null) {
+            throw new RuntimeException("Attempt is not an adaptive attempt: " + attempt.getId());
+        }
+        
+        return sessions.computeIfAbsent(attempt.getId(), id -> {
+            Session session = new Session(attempt.getUser().getId(), attempt.getAdaptiveKnowledgePoint());
+            abilityRepository.findByUserIdAndKnowledgePoint(session.userId, session.knowledgePoint)
+                    .ifPresent(ability -> {
+                        session.theta = ability.getTheta();
+                        session.responses = ability.getResponseCount();
+                    });
+            session.asked.addAll(userAnswerRepository.findQuestionIdsByAttemptId(id));
+            return session;
+        });
+    }
+    
+    private ItemBank currentItemBank() {
+        ItemBank bank = itemBank;
+        if (bank == null || itemBankStale) {
+            bank = rebuildItemBank();
+        }
+        return bank;
+    }
+    
+    private synchronized ItemBank rebuildItemBank() {
+        itemBankStale = false;
+        
+        Map<Long, double[]> calibrations = new HashMap<>();
+        for (Object[] row : itemStatisticRepository.findCalibrations()) {
+            Double pValue = (Double) row[1];
+            Double discriminationIndex = (Double) row[2];
+            long responseCount = (Long) row[3];
+            if (pValue != null && responseCount >= MIN_CALIBRATION_RESPONSES) {
+                calibrations.put((Long) row[0], new double[] {
+                        difficultyFromPValue(pValue),
+                        discriminationFromPointBiserial(discriminationIndex)});
+            }
+        }
+        
+        List<Object[]> keys = questionRepository.findAllQuestionKeys();
+        int n = keys.size();
+        long[] ids = new long[n];
+        double[] difficulties = new double[n];
+        double[] discriminations = new double[n];
+        String[] knowledgePoints = new String[n];
+        
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            Object[] row = keys.get(i);
+            ids[i] = (Long) row[0];
+            double[] calibration = calibrations.get(ids[i]);
+            difficulties[i] = calibration != null ? calibration[0] : authoredDifficulty((Course.Difficulty) row[1]);
+            discriminations[i] = calibration != null ? calibration[1] : 1.0;
+            knowledgePoints[i] = row[2] != null ? (String) row[2] : "";
+            order[i] = i;
+        }
+        
+        // Global arrays sorted by id for parameter lookups on answer
+        Arrays.sort(order, (a, b) -> Long.compare(ids[a], ids[b]));
+        ItemBank bank = new ItemBank(n);
+        for (int i = 0; i < n; i++) {
+            bank.questionIds[i] = ids[order[i]];
+            bank.difficulties[i] = difficulties[order[i]];
+            bank.discriminations[i] = discriminations[order[i]];
+        }
+        
+        // Per knowledge point arrays sorted by difficulty for selection
+        Map<String, List<Integer>> grouped = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            grouped.computeIfAbsent(knowledgePoints[i], k -> new ArrayList<>()).add(i);
+        }
+        grouped.forEach((knowledgePoint, members) -> {
+            members.sort((a, b) -> Double.compare(difficulties[a], difficulties[b]));
+            KnowledgePointItems items = new KnowledgePointItems(members.size());
+            for (int i = 0; i < members.size(); i++) {
+                items.questionIds[i] = ids[members.get(i)];
+                items.difficulties[i] = difficulties[members.get(i)];
+            }
+            bank.byKnowledgePoint.put(knowledgePoint, items);
+        });
+        
+        itemBank = bank;
+        return bank;
+    }
+    
+    // Choice questions are answered with the selected option ids, comma separated; the rest with text
+    private static boolean isCorrect(Question question, String selectedOption) {
+        if (selectedOption == null) {
+            return false;
+        }
+        if (question.getOptions().isEmpty()) {
+            return question.getCorrectAnswer() != null
+                    && question.getCorrectAnswer().trim().equalsIgnoreCase(selectedOption.trim());
+        }
+        
+        Set<String> selected = new TreeSet<>();
+        for (String part : selectedOption.split(",")) {
+            if (!part.trim().isEmpty()) {
+                selected.add(part.trim());
+            }
+        }
+        Set<String> expected = question.getOptions().stream()
+                .filter(QuestionOption::isCorrect)
+                .map(option -> String.valueOf(option.getId()))
+                .collect(Collectors.toCollection(TreeSet::new));
+        return !expected.isEmpty() && expected.equals(selected);
+    }
+    
+    private static double authoredDifficulty(Course.Difficulty difficulty) {
+        if (difficulty == null) {
+            return 0;
+        }
+        switch (difficulty) {
+            case BASIC:
+                return -1;
+            case ADVANCED:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+    
+    // Logit of the failure rate: items most learners get right land on the easy end
+    private static double difficultyFromPValue(double pValue) {
+        double p = Math.min(0.99, Math.max(0.01, pValue));
+        return clamp(Math.log((1 - p) / p));
+    }
+    
+    private static double discriminationFromPointBiserial(Double r) {
+        if (r == null || r <= 0) {
+            return 0.2;
+        }
+        double bounded = Math.min(r, 0.9);
+        return Math.min(2.5, Math.max(0.2, 1.7 * bounded / Math.sqrt(1 - bounded * bounded)));
+    }
+    
+    private static double clamp(double theta) {
+        return Math.max(-MAX_THETA, Math.min(MAX_THETA, theta));
+    }
+    
+    private static int lowerBound(double[] sorted, double value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    private static final class ItemBank {
+        private final long[] questionIds;
+        private final double[] difficulties;
+        private final double[] discriminations;
+        private final Map<String, KnowledgePointItems> byKnowledgePoint = new HashMap<>();
+        
+        private ItemBank(int size) {
+            questionIds = new long[size];
+            difficulties = new double[size];
+            discriminations = new double[size];
+        }
+    }
+    
+    private static final class KnowledgePointItems {
+        private final long[] questionIds;
+        private final double[] difficulties;
+        
+        private KnowledgePointItems(int size) {
+            questionIds = new long[size];
+            difficulties = new double[size];
+        }
+    }
+    
+    private static final class Session {
+        private final Long userId;
+        private final String knowledgePoint;
+        private final Set<Long> asked = new HashSet<>();
+        private Long lastServed;
+        private double theta = 0;
+        private int responses = 0;
+        private volatile long lastTouched = System.currentTimeMillis();
+        
+        private Session(Long userId, String knowledgePoint) {
+            this.userId = userId;
+            this.knowledgePoint = knowledgePoint;
+        }
+        
+        private void touch() {
+            lastTouched = System.currentTimeMillis();
+        }
+    }
+}
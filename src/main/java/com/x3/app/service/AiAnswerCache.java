@@ -0,0 +1,310 @@
+package com.x3.app.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.x3.app.repository.AiAssistanceLogRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Near-duplicate index of answered AI assistance questions, one per knowledge point. Questions
+ * are normalized, split into character shingles and reduced to MinHash signatures; LSH bands
+ * pick a few candidates, which are then checked against the similarity threshold. Numbers
+ * have to match exactly, since "x+1=3" and "x+1=5" share almost every shingle.
+ * <p>
+ * Answers written on other nodes arrive as ANSWERED events on the AI event channel.
+ */
+@Service
+public class AiAnswerCache implements MessageListener {
+    private static final Logger logger = LoggerFactory.getLogger(AiAnswerCache.class);
+    
+    private static final int SHINGLE_SIZE = 3;
+    private static final int BANDS = 16;
+    private static final int ROWS = 4;
+    private static final int HASHES = BANDS * ROWS;
+    private static final long[] SEEDS = createSeeds();
+    
+    private final AiAssistanceLogRepository logRepository;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final double threshold;
+    private final int maxEntries;
+    private final Map<String, KnowledgePointIndex> indexes = new ConcurrentHashMap<>();
+    
+    public AiAnswerCache(AiAssistanceLogRepository logRepository,
+                         RedisMessageListenerContainer listenerContainer,
+                         ObjectMapper objectMapper,
+                         @Value("${ai.answer-cache.threshold:0.8}") double threshold,
+                         @Value("${ai.answer-cache.max-entries-per-knowledge-point:5000}") int maxEntries) {
+        this.logRepository = logRepository;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.threshold = threshold;
+        this.maxEntries = maxEntries;
+    }
+    
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(AiEventHub.CHANNEL));
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        List<Object[]> rows = logRepository.findAnsweredQuestions();
+        for (Object[] row : rows) {
+            add((Long) row[0], (String) row[1], (String) row[2]);
+        }
+        logger.info("Indexed {} answered AI questions across {} knowledge points", rows.size(), indexes.size());
+    }
+    
+    /**
+     * Returns the id of the most similar answered log for the same knowledge point, if its
+     * estimated Jaccard similarity reaches the threshold.
+     */
+    public Optional<Long> findMatch(String knowledgePoint, String question) {
+        KnowledgePointIndex index = indexes.get(key(knowledgePoint));
+        if (index == null) {
+            return Optional.empty();
+        }
+        int[] signature = signature(question);
+        if (signature == null) {
+            return Optional.empty();
+        }
+        return index.bestMatch(signature, numbers(question), threshold);
+    }
+    
+    // Indexed after commit so a rolled back answer is never served
+    public void recordAnswered(Long logId, String knowledgePoint, String question) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(logId, knowledgePoint, question);
+                }
+            });
+        } else {
+            add(logId, knowledgePoint, question);
+        }
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        AiEventHub.AiEvent event;
+        try {
+            event = objectMapper.readValue(message.getBody(), AiEventHub.AiEvent.class);
+        } catch (IOException e) {
+            return;
+        }
+        if (!AiEventHub.AiEvent.ANSWERED.equals(event.getType())) {
+            return;
+        }
+        
+        // Events only carry the answer, so read the question; copied answers are not indexed
+        try {
+            logRepository.findById(event.getLogId())
+                    .filter(log -> log.isAnswered() && log.getSourceLogId() == null)
+                    .ifPresent(log -> add(log.getId(), log.getKnowledgePoint(), log.getQuestion()));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to index answered AI question {}: {}", event.getLogId(), e.getMessage());
+        }
+    }
+    
+    private void add(Long logId, String knowledgePoint, String question) {
+        int[] signature = signature(question);
+        if (signature != null) {
+            indexes.computeIfAbsent(key(knowledgePoint), k -> new KnowledgePointIndex(maxEntries))
+                    .put(logId, signature, numbers(question));
+        }
+    }
+    
+    private static String key(String knowledgePoint) {
+        return knowledgePoint != null ? knowledgePoint.trim().toLowerCase(Locale.ROOT) : "";
+    }
+    
+    // Width, case, spacing and closing question marks should not make two questions look
+    // different; operators and other symbols are kept, so "x+1" and "x-1" stay apart
+    private static String normalize(String text) {
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder normalized = new StringBuilder(folded.length());
+        folded.codePoints()
+                .filter(c -> !Character.isWhitespace(c) && c != '?' && c != '!')
+                .forEach(normalized::appendCodePoint);
+        return normalized.toString();
+    }
+    
+    // Numeric tokens in order, e.g. "3 1.5 20"; two questions only match if these are equal
+    private static String numbers(String question) {
+        if (question == null) {
+            return "";
+        }
+        String folded = Normalizer.normalize(question, Normalizer.Form.NFKC);
+        StringBuilder numbers = new StringBuilder();
+        int i = 0;
+        while (i < folded.length()) {
+            if (!Character.isDigit(folded.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < folded.length() && (Character.isDigit(folded.charAt(i))
+                    || (folded.charAt(i) == '.' && i + 1 < folded.length() && Character.isDigit(folded.charAt(i + 1))))) {
+                i++;
+            }
+            if (numbers.length() > 0) {
+                numbers.append(' ');
+            }
+            numbers.append(folded, start, i);
+        }
+        return numbers.toString();
+    }
+    
+    private static int[] signature(String question) {
+        if (question == null) {
+            return null;
+        }
+        int[] codePoints = normalize(question).codePoints().toArray();
+        if (codePoints.length == 0) {
+            return null;
+        }
+        
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        int shingles = Math.max(1, codePoints.length - SHINGLE_SIZE + 1);
+        for (int start = 0; start < shingles; start++) {
+            long shingle = 1125899906842597L;
+            for (int i = start; i < Math.min(start + SHINGLE_SIZE, codePoints.length); i++) {
+                shingle = 31 * shingle + codePoints[i];
+            }
+            for (int h = 0; h < HASHES; h++) {
+                int value = (int) (mix(shingle ^ SEEDS[h]) >>> 33);
+                if (value < signature[h]) {
+                    signature[h] = value;
+                }
+            }
+        }
+        return signature;
+    }
+    
+    private static long bandKey(int band, int[] signature) {
+        long key = band;
+        for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+            key = key * 0x9E3779B97F4A7C15L + signature[row];
+        }
+        return mix(key);
+    }
+    
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    private static long[] createSeeds() {
+        long[] seeds = new long[HASHES];
+        long state = 0x3C6EF372FE94F82BL;
+        for (int i = 0; i < seeds.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            seeds[i] = mix(state);
+        }
+        return seeds;
+    }
+    
+    private static final class KnowledgePointIndex {
+        private final int maxEntries;
+        // Insertion order, so the oldest entry is evicted first
+        private final LinkedHashMap<Long, int[]> signatures = new LinkedHashMap<>();
+        private final Map<Long, String> numbers = new HashMap<>();
+        private final Map<Long, List<Long>> buckets = new HashMap<>();
+        
+        private KnowledgePointIndex(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+        
+        private synchronized void put(Long logId, int[] signature, String questionNumbers) {
+            if (signatures.containsKey(logId)) {
+                remove(logId);
+            }
+            signatures.put(logId, signature);
+            numbers.put(logId, questionNumbers);
+            for (int band = 0; band < BANDS; band++) {
+                buckets.computeIfAbsent(bandKey(band, signature), k -> new ArrayList<>(2)).add(logId);
+            }
+            if (signatures.size() > maxEntries) {
+                Iterator<Long> eldest = signatures.keySet().iterator();
+                remove(eldest.next());
+            }
+        }
+        
+        private void remove(Long logId) {
+            int[] signature = signatures.remove(logId);
+            numbers.remove(logId);
+            for (int band = 0; band < BANDS; band++) {
+                long key = bandKey(band, signature);
+                List<Long> bucket = buckets.get(key);
+                if (bucket != null) {
+                    bucket.remove(logId);
+                    if (bucket.isEmpty()) {
+                        buckets.remove(key);
+                    }
+                }
+            }
+        }
+        
+        private synchronized Optional<Long> bestMatch(int[] signature, String questionNumbers, double threshold) {
+            Set<Long> candidates = new HashSet<>();
+            for (int band = 0; band < BANDS; band++) {
+                List<Long> bucket = buckets.get(bandKey(band, signature));
+                if (bucket != null) {
+                    candidates.addAll(bucket);
+                }
+            }
+            
+            Long best = null;
+            double bestSimilarity = threshold;
+            for (Long candidate : candidates) {
+                if (!questionNumbers.equals(numbers.get(candidate))) {
+                    continue;
+                }
+                int[] other = signatures.get(candidate);
+                int agreeing = 0;
+                for (int h = 0; h < HASHES; h++) {
+                    if (other[h] == signature[h]) {
+                        agreeing++;
+                    }
+                }
+                double similarity = (double) agreeing / HASHES;
+                if (similarity >= bestSimilarity) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+            return Optional.ofNullable(best);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.x3.app.service;
+
+import com.x3.app.model.AiAssistanceLog;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backend that drafts answers for a micro-batch of AI assistance questions.
+ */
+public interface AiAnswerGenerator {
+    
+    /**
+     * Returns answers keyed by log id. Logs missing from the result stay unanswered and are
+     * retried later.
+     */
+    Map<Long, String> generate(List<AiAssistanceLog> logs);
+}
@@ -0,0 +1,179 @@
+package com.x3.app.service;
+
+import com.x3.app.model.AiAssistanceLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drafts answers for pending AI assistance logs. A poller claims micro-batches from the lease
+ * queue only while the bounded worker pool has room, so under a spike the backlog stays in the
+ * database as unanswered logs instead of piling up threads or memory.
+ */
+@Service
+public class AiAnswerPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(AiAnswerPipeline.class);
+    
+    private final AiAssistanceService aiAssistanceService;
+    private final AiAnswerGenerator answerGenerator;
+    private final boolean enabled;
+    private final Long workerId;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong answeredCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    
+    public AiAnswerPipeline(AiAssistanceService aiAssistanceService,
+                            AiAnswerGenerator answerGenerator,
+                            @Value("${ai.generator.enabled:false}") boolean enabled,
+                            @Value("${ai.generator.worker-id:#{null}}") Long workerId,
+                            @Value("${ai.generator.workers:4}") int workers,
+                            @Value("${ai.generator.queue-capacity:16}") int queueCapacity,
+                            @Value("${ai.generator.batch-size:8}") int batchSize) {
+        this.aiAssistanceService = aiAssistanceService;
+        this.answerGenerator = answerGenerator;
+        this.enabled = enabled;
+        this.workerId = workerId != null ? workerId : newWorkerId();
+        if (this.workerId >= 0) {
+            throw new IllegalArgumentException("ai.generator.worker-id must be negative, got " + workerId);
+        }
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ai-answer-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+    
+    @Scheduled(fixedDelayString = "${ai.generator.poll-ms:2000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        
+        // Claim only what the pool can accept now; the rest waits unleased in the database
+        int freeSlots = queueCapacity - executor.getQueue().size();
+        while (freeSlots-- > 0) {
+            List<AiAssistanceLog> batch = aiAssistanceService.claimUnansweredLogs(workerId, batchSize);
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                executor.execute(() -> process(batch));
+            } catch (RejectedExecutionException e) {
+                rejectedCount.addAndGet(batch.size());
+                release(batch);
+                return;
+            }
+        }
+    }
+    
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+    
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    public long getAnsweredCount() {
+        return answeredCount.get();
+    }
+    
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+    
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public Long getWorkerId() {
+        return workerId;
+    }
+    
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            // Unfinished batches keep their leases, which expire and are claimed again
+            executor.shutdownNow();
+        }
+    }
+    
+    private void process(List<AiAssistanceLog> batch) {
+        inFlight.incrementAndGet();
+        try {
+            Map<Long, String> answers = answerGenerator.generate(batch);
+            for (AiAssistanceLog log : batch) {
+                String answer = answers.get(log.getId());
+                if (answer == null) {
+                    // The lease expiry doubles as retry backoff
+                    failedCount.incrementAndGet();
+                    continue;
+                }
+                try {
+                    aiAssistanceService.updateAiAssistanceLogWithAnswer(log.getId(), answer, workerId);
+                    answeredCount.incrementAndGet();
+                } catch (RuntimeException e) {
+                    // A teacher took the log over after our lease expired
+                    failedCount.incrementAndGet();
+                    logger.warn("Dropped generated answer for AI log {}: {}", log.getId(), e.getMessage());
+                }
+            }
+        } catch (RuntimeException e) {
+            failedCount.addAndGet(batch.size());
+            logger.error("Answer generation failed for {} AI logs, retrying after lease expiry", batch.size(), e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Lease owner for this node's workers when none is configured. Leases share the owner column
+     * with teachers' user ids, so worker ids are negative; a random one per process keeps nodes
+     * apart, and leases held by a previous run simply expire.
+     */
+    private static long newWorkerId() {
+        return UUID.randomUUID().getMostSignificantBits() | Long.MIN_VALUE;
+    }
+    
+    // Hands a batch the pool could not take straight back to the queue
+    private void release(List<AiAssistanceLog> batch) {
+        for (AiAssistanceLog log : batch) {
+            try {
+                aiAssistanceService.releaseLease(log.getId(), workerId);
+            } catch (RuntimeException e) {
+                logger.warn("Could not release AI log {}: {}", log.getId(), e.getMessage());
+            }
+        }
+    }
+}
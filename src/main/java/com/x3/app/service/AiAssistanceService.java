@@ -4,6 +4,8 @@ import com.x3.app.model.AiAssistanceLog;
 import com.x3.app.model.User;
 import com.x3.app.repository.AiAssistanceLogRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,6 +18,12 @@ import java.util.Optional;
 public class AiAssistanceService {
     
     private final AiAssistanceLogRepository aiAssistanceLogRepository;
+    private final LearnerRiskService learnerRiskService;
+    private final AiAnswerCache aiAnswerCache;
+    private final AiEventHub aiEventHub;
+    
+    @Value("${ai.queue.lease-minutes:15}")
+    private int leaseMinutes;
     
     public List<AiAssistanceLog> getAllAiAssistanceLogs() {
         return aiAssistanceLogRepository.findAll();
@@ -29,8 +37,40 @@ public class AiAssistanceService {
         return aiAssistanceLogRepository.findByUserOrderByCreatedAtDesc(user);
     }
     
-    public List<AiAssistanceLog> getUnansweredAiAssistanceLogs() {
-        return aiAssistanceLogRepository.findByAnsweredFalse();
+    public List<AiAssistanceLog> getUnansweredAiAssistanceLogs(Long afterId, int size) {
+        return aiAssistanceLogRepository.findByAnsweredFalseAndIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, size));
+    }
+    
+    public long countUnansweredAiAssistanceLogs() {
+        return aiAssistanceLogRepository.countByAnsweredFalse();
+    }
+    
+    /**
+     * Leases up to {@code batchSize} unanswered logs to the caller. Concurrent claimers skip rows
+     * locked by each other, so a log is handed to one claimer at a time until its lease expires.
+     */
+    @Transactional
+    public List<AiAssistanceLog> claimUnansweredLogs(Long userId, int batchSize) {
+        LocalDateTime now = LocalDateTime.now();
+        List<AiAssistanceLog> logs = aiAssistanceLogRepository.findClaimableForUpdate(now, batchSize);
+        for (AiAssistanceLog log : logs) {
+            log.setLeaseOwnerId(userId);
+            log.setLeaseExpiresAt(now.plusMinutes(leaseMinutes));
+        }
+        return aiAssistanceLogRepository.saveAll(logs);
+    }
+    
+    @Transactional
+    public void releaseLease(Long id, Long userId) {
+        AiAssistanceLog log = aiAssistanceLogRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("AI Assistance Log not found with id: " + id));
+        
+        if (!userId.equals(log.getLeaseOwnerId())) {
+            throw new RuntimeException("AI Assistance Log is not claimed by this user");
+        }
+        log.setLeaseOwnerId(null);
+        log.setLeaseExpiresAt(null);
+        aiAssistanceLogRepository.save(log);
     }
     
     public Long countRecentQueriesByUser(User user, int hoursThreshold) {
@@ -45,19 +85,48 @@ public class AiAssistanceService {
         log.setQuestion(question);
         log.setKnowledgePoint(knowledgePoint);
         
-        return aiAssistanceLogRepository.save(log);
+        // Answer a near-identical question right away; the copy stays out of the queue and the
+        // answer cache, and a teacher can still replace it
+        Optional<AiAssistanceLog> match = aiAnswerCache.findMatch(knowledgePoint, question)
+                .flatMap(aiAssistanceLogRepository::findById)
+                .filter(AiAssistanceLog::isAnswered);
+        if (match.isPresent()) {
+            log.setAnswer(match.get().getAnswer());
+            log.setAnswered(true);
+            log.setSourceLogId(match.get().getId());
+        }
+        
+        AiAssistanceLog savedLog = aiAssistanceLogRepository.save(log);
+        learnerRiskService.recordAiQuestion(user.getId());
+        if (savedLog.isAnswered()) {
+            aiEventHub.publishAnswered(savedLog);
+        } else {
+            aiEventHub.publishNewQuestion(savedLog);
+        }
+        return savedLog;
     }
     
     @Transactional
-    public AiAssistanceLog updateAiAssistanceLogWithAnswer(Long id, String answer) {
+    public AiAssistanceLog updateAiAssistanceLogWithAnswer(Long id, String answer, Long answeredBy) {
         Optional<AiAssistanceLog> optionalLog = aiAssistanceLogRepository.findById(id);
         
         if (optionalLog.isPresent()) {
             AiAssistanceLog log = optionalLog.get();
+            if (isLeasedToOther(log, answeredBy)) {
+                throw new RuntimeException("AI Assistance Log is claimed by another user");
+            }
+            
             log.setAnswer(answer);
             log.setAnswered(true);
+            // A teacher's answer replaces any copied one and becomes a source itself
+            log.setSourceLogId(null);
+            log.setLeaseOwnerId(null);
+            log.setLeaseExpiresAt(null);
             
-            return aiAssistanceLogRepository.save(log);
+            AiAssistanceLog savedLog = aiAssistanceLogRepository.save(log);
+            aiAnswerCache.recordAnswered(savedLog.getId(), savedLog.getKnowledgePoint(), savedLog.getQuestion());
+            aiEventHub.publishAnswered(savedLog);
+            return savedLog;
         }
         
         throw new RuntimeException("AI Assistance Log not found with id: " + id);
@@ -66,4 +135,11 @@ public class AiAssistanceService {
     public List<AiAssistanceLog> getAiAssistanceLogsByKnowledgePoint(String knowledgePoint) {
         return aiAssistanceLogRepository.findByKnowledgePointContaining(knowledgePoint);
     }
+    
+    private static boolean isLeasedToOther(AiAssistanceLog log, Long userId) {
+        return log.getLeaseOwnerId() != null
+                && !log.getLeaseOwnerId().equals(userId)
+                && log.getLeaseExpiresAt() != null
+                && log.getLeaseExpiresAt().isAfter(LocalDateTime.now());
+    }
 }
\ No newline at end of file
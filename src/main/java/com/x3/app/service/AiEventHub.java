@@ -0,0 +1,221 @@
+package com.x3.app.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.x3.app.model.AiAssistanceLog;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fans AI assistance events out to Server-Sent Event subscribers. Events are published on a
+ * Redis channel and every node, including the publisher, delivers them to its own open
+ * connections, so a learner connected to any node sees answers written on any other.
+ */
+@Service
+public class AiEventHub implements MessageListener {
+    private static final Logger logger = LoggerFactory.getLogger(AiEventHub.class);
+    
+    static final String CHANNEL = "ai-assistance:events";
+    
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final long timeoutMillis;
+    
+    private final Map<Long, Set<SseEmitter>> logSubscribers = new ConcurrentHashMap<>();
+    private final Set<SseEmitter> queueSubscribers = ConcurrentHashMap.newKeySet();
+    
+    public AiEventHub(StringRedisTemplate redisTemplate,
+                      RedisMessageListenerContainer listenerContainer,
+                      ObjectMapper objectMapper,
+                      @Value("${ai.events.sse-timeout-ms:1800000}") long timeoutMillis) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+    
+    public SseEmitter subscribeToLog(Long logId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        // Added inside compute so heartbeat() cannot drop the set between creating and adding to it
+        logSubscribers.compute(logId, (id, emitters) -> {
+            Set<SseEmitter> subscribers = emitters != null ? emitters : ConcurrentHashMap.<SseEmitter>newKeySet();
+            subscribers.add(emitter);
+            return subscribers;
+        });
+        Runnable remove = () -> logSubscribers.computeIfPresent(logId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        return emitter;
+    }
+    
+    public SseEmitter subscribeToQueue() {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        queueSubscribers.add(emitter);
+        emitter.onCompletion(() -> queueSubscribers.remove(emitter));
+        emitter.onTimeout(() -> queueSubscribers.remove(emitter));
+        emitter.onError(e -> queueSubscribers.remove(emitter));
+        return emitter;
+    }
+    
+    // Sends a final answer straight to a fresh subscriber that arrived after the log was answered
+    public void sendAnswered(SseEmitter emitter, AiAssistanceLog log) {
+        if (send(emitter, "answered", new AiEvent(AiEvent.ANSWERED, log.getId(), log.getKnowledgePoint(), log.getAnswer()))) {
+            emitter.complete();
+        }
+    }
+    
+    public void publishNewQuestion(AiAssistanceLog log) {
+        publishAfterCommit(new AiEvent(AiEvent.NEW_QUESTION, log.getId(), log.getKnowledgePoint(), log.getQuestion()));
+    }
+    
+    public void publishAnswered(AiAssistanceLog log) {
+        publishAfterCommit(new AiEvent(AiEvent.ANSWERED, log.getId(), log.getKnowledgePoint(), log.getAnswer()));
+    }
+    
+    // For generators that stream partial output; tokens are not persisted
+    public void publishToken(Long logId, String token) {
+        publish(new AiEvent(AiEvent.TOKEN, logId, null, token));
+    }
+    
+    public int getSubscriberCount() {
+        return queueSubscribers.size() + logSubscribers.values().stream().mapToInt(Set::size).sum();
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            dispatch(objectMapper.readValue(message.getBody(), AiEvent.class));
+        } catch (IOException e) {
+            logger.warn("Ignoring malformed AI event: {}", e.getMessage());
+        }
+    }
+    
+    // Keeps idle connections open through proxies and drops clients that went away
+    @Scheduled(fixedDelayString = "${ai.events.heartbeat-ms:25000}")
+    public void heartbeat() {
+        queueSubscribers.removeIf(emitter -> !sendComment(emitter));
+        logSubscribers.values().forEach(emitters -> emitters.removeIf(emitter -> !sendComment(emitter)));
+        // Emptiness is re-checked atomically with subscribeToLog's add
+        for (Long logId : logSubscribers.keySet()) {
+            logSubscribers.computeIfPresent(logId, (id, emitters) -> emitters.isEmpty() ? null : emitters);
+        }
+    }
+    
+    private void publishAfterCommit(AiEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(event);
+                }
+            });
+        } else {
+            publish(event);
+        }
+    }
+    
+    private void publish(AiEvent event) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize AI event", e);
+        } catch (RuntimeException e) {
+            // Without Redis, at least this node's subscribers are served
+            logger.warn("Redis publish failed, delivering AI event locally: {}", e.getMessage());
+            dispatch(event);
+        }
+    }
+    
+    private void dispatch(AiEvent event) {
+        if (AiEvent.NEW_QUESTION.equals(event.getType())) {
+            queueSubscribers.removeIf(emitter -> !send(emitter, "question", event));
+            return;
+        }
+        
+        Set<SseEmitter> emitters = logSubscribers.get(event.getLogId());
+        if (AiEvent.TOKEN.equals(event.getType())) {
+            if (emitters != null) {
+                emitters.removeIf(emitter -> !send(emitter, "token", event));
+            }
+        } else if (AiEvent.ANSWERED.equals(event.getType())) {
+            if (emitters != null) {
+                for (SseEmitter emitter : emitters) {
+                    if (send(emitter, "answered", event)) {
+                        emitter.complete();
+                    }
+                }
+                logSubscribers.remove(event.getLogId());
+            }
+            // Lets teacher queues drop the question
+            queueSubscribers.removeIf(emitter -> !send(emitter, "answered", new AiEvent(
+                    AiEvent.ANSWERED, event.getLogId(), event.getKnowledgePoint(), null)));
+        }
+    }
+    
+    private static boolean send(SseEmitter emitter, String name, Object data) {
+        synchronized (emitter) {
+            try {
+                emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                return false;
+            }
+        }
+    }
+    
+    private static boolean sendComment(SseEmitter emitter) {
+        synchronized (emitter) {
+            try {
+                emitter.send(SseEmitter.event().comment("keep-alive"));
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                return false;
+            }
+        }
+    }
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AiEvent {
+        static final String NEW_QUESTION = "NEW_QUESTION";
+        static final String TOKEN = "TOKEN";
+        static final String ANSWERED = "ANSWERED";
+        
+        private String type;
+        private Long logId;
+        private String knowledgePoint;
+        private String content;
+    }
+}
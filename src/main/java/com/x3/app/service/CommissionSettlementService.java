@@ -0,0 +1,198 @@
+package com.x3.app.service;
+
+import com.x3.app.model.SettlementBatch;
+import com.x3.app.repository.PromotionRepository;
+import com.x3.app.repository.SettlementBatchRepository;
+import com.x3.app.repository.SettlementLineRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pays out unpaid commission in settlement batches. Promoters are processed in chunks of user
+ * ids; each chunk is one transaction that marks their unpaid promotions paid with a single
+ * set-based UPDATE tagged with the batch id, deducts commission clawed back by refunds since
+ * their last payout, then derives the per-user settlement lines from exactly those rows.
+ * Memory is bounded by the chunk size, and the payout file is streamed from the lines page by
+ * page.
+ */
+@Service
+public class CommissionSettlementService {
+    private static final Logger logger = LoggerFactory.getLogger(CommissionSettlementService.class);
+    
+    private static final int MAX_ERROR_LENGTH = 1000;
+    
+    private final PromotionRepository promotionRepository;
+    private final SettlementBatchRepository batchRepository;
+    private final SettlementLineRepository lineRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    
+    public CommissionSettlementService(PromotionRepository promotionRepository,
+                                       SettlementBatchRepository batchRepository,
+                                       SettlementLineRepository lineRepository,
+                                       PlatformTransactionManager transactionManager,
+                                       @Value("${promotion.settlement.chunk-size:500}") int chunkSize) {
+        this.promotionRepository = promotionRepository;
+        this.batchRepository = batchRepository;
+        this.lineRepository = lineRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+    
+    public Optional<SettlementBatch> getBatch(Long batchId) {
+        return batchRepository.findById(batchId);
+    }
+    
+    public List<SettlementBatch> getRecentBatches() {
+        return batchRepository.findTop20ByOrderByIdDesc();
+    }
+    
+    /**
+     * Settles the unpaid commission of every promoter. Returns empty if a settlement run is
+     * already in progress on this node.
+     */
+    public Optional<SettlementBatch> settleAll() {
+        if (!running.compareAndSet(false, true)) {
+            return Optional.empty();
+        }
+        try {
+            SettlementBatch batch = startBatch();
+            try {
+                Long afterUserId = 0L;
+                while (true) {
+                    List<Long> userIds = promotionRepository.findUnpaidPromoterIdsAfter(afterUserId,
+                            PageRequest.of(0, chunkSize));
+                    if (userIds.isEmpty()) {
+                        break;
+                    }
+                    settleChunk(batch, userIds);
+                    afterUserId = userIds.get(userIds.size() - 1);
+                }
+            } catch (RuntimeException e) {
+                failBatch(batch, e);
+                throw e;
+            }
+            return Optional.of(completeBatch(batch));
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    /**
+     * Settles the unpaid commission of the given promoters as one batch.
+     */
+    public SettlementBatch settleUsers(List<Long> userIds) {
+        SettlementBatch batch = startBatch();
+        try {
+            for (int from = 0; from < userIds.size(); from += chunkSize) {
+                settleChunk(batch, new ArrayList<>(userIds.subList(from, Math.min(from + chunkSize, userIds.size()))));
+            }
+        } catch (RuntimeException e) {
+            failBatch(batch, e);
+            throw e;
+        }
+        return completeBatch(batch);
+    }
+    
+    /**
+     * Writes the batch's payout file as CSV (user id, name, phone, promotions, clawbacks,
+     * clawback amount, amount), reading the settlement lines in keyset pages so the whole file
+     * is never held in memory. The amount is net of the clawbacks.
+     */
+    public void writePayoutFile(Long batchId, Writer writer) throws IOException {
+        writer.write("user_id,name,phone,promotions,clawbacks,clawback_amount,amount\n");
+        Long afterUserId = 0L;
+        while (true) {
+            List<Object[]> rows = lineRepository.findPayoutRows(batchId, afterUserId, PageRequest.of(0, chunkSize));
+            for (Object[] row : rows) {
+                writer.write(row[0] + "," + csv((String) row[1]) + "," + csv((String) row[2]) + ","
+                        + row[3] + "," + row[5] + "," + ((BigDecimal) row[6]).toPlainString() + ","
+                        + ((BigDecimal) row[4]).toPlainString() + "\n");
+            }
+            if (rows.size() < chunkSize) {
+                break;
+            }
+            afterUserId = (Long) rows.get(rows.size() - 1)[0];
+        }
+        writer.flush();
+    }
+    
+    private SettlementBatch startBatch() {
+        SettlementBatch batch = new SettlementBatch();
+        batch.setSettledAt(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+        return batchRepository.save(batch);
+    }
+    
+    private void settleChunk(SettlementBatch batch, List<Long> userIds) {
+        transactionTemplate.execute(status -> {
+            int settled = promotionRepository.settleUnpaid(userIds, batch.getSettledAt(), batch.getId());
+            if (settled > 0) {
+                promotionRepository.deductClawbacks(userIds, batch.getId());
+                lineRepository.insertTotals(batch.getId(), userIds);
+            }
+            return settled;
+        });
+    }
+    
+    private SettlementBatch completeBatch(SettlementBatch batch) {
+        applyTotals(batch);
+        batch.setStatus(SettlementBatch.Status.COMPLETED);
+        batch.setCompletedAt(LocalDateTime.now());
+        SettlementBatch saved = batchRepository.save(batch);
+        logger.info("Settlement batch {} paid {} promotions to {} users, total {} after {} clawbacks of {}",
+                saved.getId(), saved.getPromotionCount(), saved.getUserCount(), saved.getTotalAmount(),
+                saved.getClawbackCount(), saved.getClawbackAmount());
+        return saved;
+    }
+    
+    private void failBatch(SettlementBatch batch, RuntimeException cause) {
+        String error = String.valueOf(cause.getMessage());
+        batch.setLastError(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+        applyTotals(batch);
+        batch.setStatus(SettlementBatch.Status.FAILED);
+        batch.setCompletedAt(LocalDateTime.now());
+        batchRepository.save(batch);
+        logger.error("Settlement batch {} failed; chunks settled so far stay recorded", batch.getId(), cause);
+    }
+    
+    private void applyTotals(SettlementBatch batch) {
+        Object[] totals = lineRepository.summarize(batch.getId()).get(0);
+        batch.setUserCount(((Number) totals[0]).longValue());
+        // Sums are null for a batch that settled nothing
+        batch.setPromotionCount(totals[1] != null ? ((Number) totals[1]).longValue() : 0);
+        batch.setTotalAmount(totals[2] != null ? (BigDecimal) totals[2] : BigDecimal.ZERO);
+        batch.setClawbackCount(totals[3] != null ? ((Number) totals[3]).longValue() : 0);
+        batch.setClawbackAmount(totals[4] != null ? (BigDecimal) totals[4] : BigDecimal.ZERO);
+    }
+    
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        // Spreadsheets would run a cell starting with one of these as a formula
+        if (!value.isEmpty() && "=+-@".indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
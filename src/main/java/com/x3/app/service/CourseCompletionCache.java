@@ -0,0 +1,266 @@
+package com.x3.app.service;
+
+import com.x3.app.payload.response.CourseCompletionResponse;
+import com.x3.app.repository.CourseSectionRepository;
+import com.x3.app.repository.UserSectionProgressRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-user course completion held as bitsets. Each course's sections are mapped to dense
+ * ordinals (their position in the course's sorted section ids), and a user's completed and
+ * skipped sections are one bit each, so a completion summary is a popcount per course.
+ * <p>
+ * Writes and section changes on this node are applied after commit. Those made on other
+ * nodes are picked up when the entry expires, after progress.completion.ttl-seconds.
+ */
+@Service
+public class CourseCompletionCache {
+    
+    private static final int VERSION_STRIPES = 1024;
+    
+    private final CourseSectionRepository sectionRepository;
+    private final UserSectionProgressRepository progressRepository;
+    private final Map<Long, UserCompletion> users;
+    private final long ttlMillis;
+    
+    private volatile SectionIndex sectionIndex;
+    
+    // Write counters striped by user, so a rebuild is only discarded when that user (or a rare
+    // stripe neighbour) wrote progress while it was reading
+    private final AtomicLongArray writeVersions = new AtomicLongArray(VERSION_STRIPES);
+    
+    public CourseCompletionCache(CourseSectionRepository sectionRepository,
+                                 UserSectionProgressRepository progressRepository,
+                                 @Value("${progress.completion.cache-size:10000}") int maxUsers,
+                                 @Value("${progress.completion.ttl-seconds:60}") long ttlSeconds) {
+        this.sectionRepository = sectionRepository;
+        this.progressRepository = progressRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.users = Collections.synchronizedMap(new LinkedHashMap<Long, UserCompletion>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, UserCompletion> eldest) {
+                return size() > maxUsers;
+            }
+        });
+    }
+    
+    public List<CourseCompletionResponse> getSummary(Long userId) {
+        SectionIndex index = currentIndex();
+        UserCompletion completion = userCompletion(userId, index);
+        
+        List<CourseCompletionResponse> summary = new ArrayList<>();
+        synchronized (completion) {
+            completion.byCourse.forEach((courseId, bits) -> {
+                long[] sections = index.sectionsByCourse.get(courseId);
+                int total = sections != null ? sections.length : 0;
+                int completed = popcount(bits.completed);
+                int skipped = popcount(bits.skipped);
+                double percent = total > 0 ? completed * 100.0 / total : 0;
+                summary.add(new CourseCompletionResponse(courseId, total, completed, skipped, percent));
+            });
+        }
+        return summary;
+    }
+    
+    public void recordProgress(Long userId, Long sectionId, boolean completed, boolean skipped) {
+        Runnable apply = () -> {
+            SectionIndex index = sectionIndex;
+            UserCompletion completion;
+            // Same monitor as the check-and-put in userCompletion(), so a rebuild either sees the bump or gets the write
+            synchronized (users) {
+                writeVersions.incrementAndGet(stripe(userId));
+                completion = users.get(userId);
+            }
+            if (index == null || completion == null) {
+                return;
+            }
+            if (completion.indexVersion != index.version || !index.courseBySection.containsKey(sectionId)) {
+                // Section added since the index was built; rebuild the user lazily
+                users.remove(userId);
+                return;
+            }
+            synchronized (completion) {
+                completion.set(index, sectionId, completed, skipped);
+            }
+        };
+        
+        afterCommit(apply);
+    }
+    
+    // Section ordinals shift when sections are added or removed, which invalidates every bitset
+    public void invalidateSections() {
+        afterCommit(() -> {
+            sectionIndex = null;
+            users.clear();
+        });
+    }
+    
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    private UserCompletion userCompletion(Long userId, SectionIndex index) {
+        long now = System.currentTimeMillis();
+        UserCompletion completion = users.get(userId);
+        if (completion != null && completion.indexVersion == index.version && now - completion.builtAt < ttlMillis) {
+            return completion;
+        }
+        
+        int stripe = stripe(userId);
+        long version = writeVersions.get(stripe);
+        UserCompletion rebuilt = new UserCompletion(index.version, now);
+        for (Object[] row : progressRepository.findSectionFlagsByUserId(userId)) {
+            Long sectionId = (Long) row[0];
+            if (index.courseBySection.containsKey(sectionId)) {
+                rebuilt.set(index, sectionId, (Boolean) row[1], (Boolean) row[2]);
+            }
+        }
+        
+        synchronized (users) {
+            if (writeVersions.get(stripe) == version) {
+                users.put(userId, rebuilt);
+            }
+        }
+        return rebuilt;
+    }
+    
+    private SectionIndex currentIndex() {
+        SectionIndex index = sectionIndex;
+        if (index == null || isExpired(index)) {
+            index = rebuildIndex();
+        }
+        return index;
+    }
+    
+    private synchronized SectionIndex rebuildIndex() {
+        if (sectionIndex != null && !isExpired(sectionIndex)) {
+            return sectionIndex;
+        }
+        
+        Map<Long, List<Long>> grouped = new HashMap<>();
+        Map<Long, Long> courseBySection = new HashMap<>();
+        // Order-independent hash of the (section, course) pairs; ordinals only change when the pairs do
+        long version = 0;
+        for (Object[] row : sectionRepository.findSectionCourseIds()) {
+            Long sectionId = (Long) row[0];
+            Long courseId = (Long) row[1];
+            grouped.computeIfAbsent(courseId, id -> new ArrayList<>()).add(sectionId);
+            courseBySection.put(sectionId, courseId);
+            version += mix(sectionId, courseId);
+        }
+        
+        Map<Long, long[]> sectionsByCourse = new HashMap<>();
+        grouped.forEach((courseId, sectionIds) -> {
+            long[] sorted = sectionIds.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            sectionsByCourse.put(courseId, sorted);
+        });
+        
+        // A refresh that finds the same sections keeps the version, so users' bitsets stay valid
+        SectionIndex index = new SectionIndex(version, System.nanoTime(), sectionsByCourse, courseBySection);
+        sectionIndex = index;
+        return index;
+    }
+    
+    private boolean isExpired(SectionIndex index) {
+        return System.nanoTime() - index.builtAt >= ttlMillis * 1_000_000;
+    }
+    
+    // SplitMix64 finalizer over the section and course id
+    private static long mix(long sectionId, long courseId) {
+        long z = sectionId * 0x9E3779B97F4A7C15L + courseId;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    private static int stripe(Long userId) {
+        return (int) (userId & (VERSION_STRIPES - 1));
+    }
+    
+    private static int popcount(long[] words) {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+    
+    private static final class SectionIndex {
+        private final long version;
+        private final long builtAt;
+        private final Map<Long, long[]> sectionsByCourse;
+        private final Map<Long, Long> courseBySection;
+        
+        private SectionIndex(long version, long builtAt, Map<Long, long[]> sectionsByCourse, Map<Long, Long> courseBySection) {
+            this.version = version;
+            this.builtAt = builtAt;
+            this.sectionsByCourse = sectionsByCourse;
+            this.courseBySection = courseBySection;
+        }
+        
+        private int ordinal(Long courseId, Long sectionId) {
+            return Arrays.binarySearch(sectionsByCourse.get(courseId), sectionId);
+        }
+    }
+    
+    private static final class CourseBits {
+        private final long[] completed;
+        private final long[] skipped;
+        
+        private CourseBits(int sections) {
+            int words = (sections + 63) >>> 6;
+            completed = new long[words];
+            skipped = new long[words];
+        }
+    }
+    
+    private static final class UserCompletion {
+        private final long indexVersion;
+        private final long builtAt;
+        private final Map<Long, CourseBits> byCourse = new HashMap<>();
+        
+        private UserCompletion(long indexVersion, long builtAt) {
+            this.indexVersion = indexVersion;
+            this.builtAt = builtAt;
+        }
+        
+        private void set(SectionIndex index, Long sectionId, boolean completed, boolean skipped) {
+            Long courseId = index.courseBySection.get(sectionId);
+            int ordinal = index.ordinal(courseId, sectionId);
+            CourseBits bits = byCourse.computeIfAbsent(courseId,
+                    id -> new CourseBits(index.sectionsByCourse.get(id).length));
+            setBit(bits.completed, ordinal, completed);
+            setBit(bits.skipped, ordinal, skipped);
+        }
+        
+        private static void setBit(long[] words, int ordinal, boolean value) {
+            if (value) {
+                words[ordinal >>> 6] |= 1L << ordinal;
+            } else {
+                words[ordinal >>> 6] &= ~(1L << ordinal);
+            }
+        }
+    }
+}
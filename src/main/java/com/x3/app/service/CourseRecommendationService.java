@@ -0,0 +1,243 @@
+package com.x3.app.service;
+
+import com.x3.app.repository.UserQuizAttemptRepository;
+import com.x3.app.repository.UserSectionProgressRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Item-to-item course recommender. A periodic job counts how often two courses were studied
+ * by the same learner (sections or quizzes), keeps the top neighbors of each course by cosine
+ * similarity and publishes them as an immutable table; requests only merge a few short
+ * neighbor lists.
+ */
+@Service
+public class CourseRecommendationService {
+    private static final Logger logger = LoggerFactory.getLogger(CourseRecommendationService.class);
+    
+    // Caps the quadratic pair counting for very active learners
+    private static final int MAX_HISTORY = 50;
+    private static final int RECENT_COURSES = 5;
+    
+    private final UserSectionProgressRepository progressRepository;
+    private final UserQuizAttemptRepository attemptRepository;
+    private final int neighborCount;
+    private volatile NeighborTable table;
+    
+    public CourseRecommendationService(UserSectionProgressRepository progressRepository,
+                                       UserQuizAttemptRepository attemptRepository,
+                                       @Value("${progress.recommendations.neighbors:20}") int neighborCount) {
+        this.progressRepository = progressRepository;
+        this.attemptRepository = attemptRepository;
+        this.neighborCount = neighborCount;
+    }
+    
+    /**
+     * Returns up to {@code limit} course ids related to the user's most recent courses,
+     * excluding courses the user has already started. Empty until the first build or for
+     * users without history.
+     */
+    public List<Long> recommend(Long userId, int limit) {
+        NeighborTable current = table;
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        int[] history = current.histories.get(userId);
+        if (history == null) {
+            return Collections.emptyList();
+        }
+        
+        float[] scores = new float[current.courseIds.length];
+        int recent = Math.min(RECENT_COURSES, history.length);
+        for (int position = 0; position < recent; position++) {
+            int course = history[position];
+            float decay = 1f / (position + 1);
+            int[] neighbors = current.neighbors[course];
+            float[] weights = current.weights[course];
+            for (int k = 0; k < neighbors.length; k++) {
+                scores[neighbors[k]] += weights[k] * decay;
+            }
+        }
+        for (int course : history) {
+            scores[course] = 0f;
+        }
+        
+        List<Long> result = new ArrayList<>(limit);
+        while (result.size() < limit) {
+            int best = -1;
+            for (int i = 0; i < scores.length; i++) {
+                if (scores[i] > 0f && (best < 0 || scores[i] > scores[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            result.add(current.courseIds[best]);
+            scores[best] = 0f;
+        }
+        return result;
+    }
+    
+    @Scheduled(fixedDelayString = "${progress.recommendations.refresh-ms:3600000}")
+    public void rebuild() {
+        Map<Long, Map<Long, LocalDateTime>> lastActivity = new HashMap<>();
+        collect(lastActivity, progressRepository.findLastActivityByUserAndCourse());
+        collect(lastActivity, attemptRepository.findLastActivityByUserAndCourse());
+        
+        long[] courseIds = lastActivity.values().stream()
+                .flatMap(courses -> courses.keySet().stream())
+                .mapToLong(Long::longValue)
+                .distinct()
+                .sorted()
+                .toArray();
+        
+        int[] popularity = new int[courseIds.length];
+        IntCounter[] cooccurrence = new IntCounter[courseIds.length];
+        for (int i = 0; i < cooccurrence.length; i++) {
+            cooccurrence[i] = new IntCounter();
+        }
+        
+        Map<Long, int[]> histories = new HashMap<>(lastActivity.size() * 2);
+        lastActivity.forEach((userId, courses) -> {
+            List<Map.Entry<Long, LocalDateTime>> ordered = new ArrayList<>(courses.entrySet());
+            ordered.sort(Map.Entry.<Long, LocalDateTime>comparingByValue().reversed());
+            
+            int[] history = new int[Math.min(MAX_HISTORY, ordered.size())];
+            for (int i = 0; i < history.length; i++) {
+                history[i] = Arrays.binarySearch(courseIds, ordered.get(i).getKey());
+            }
+            histories.put(userId, history);
+            
+            for (int i = 0; i < history.length; i++) {
+                popularity[history[i]]++;
+                for (int j = i + 1; j < history.length; j++) {
+                    cooccurrence[history[i]].increment(history[j]);
+                    cooccurrence[history[j]].increment(history[i]);
+                }
+            }
+        });
+        
+        int[][] neighbors = new int[courseIds.length][];
+        float[][] weights = new float[courseIds.length][];
+        for (int course = 0; course < courseIds.length; course++) {
+            selectNeighbors(course, cooccurrence[course], popularity, neighbors, weights);
+            cooccurrence[course] = null;
+        }
+        
+        table = new NeighborTable(courseIds, neighbors, weights, Collections.unmodifiableMap(histories));
+        logger.info("Built course neighbor table for {} courses and {} learners", courseIds.length, histories.size());
+    }
+    
+    private void selectNeighbors(int course, IntCounter counts, int[] popularity,
+                                 int[][] neighbors, float[][] weights) {
+        int[] candidates = new int[counts.size];
+        float[] similarity = new float[counts.size];
+        int n = 0;
+        for (int slot = 0; slot < counts.keys.length; slot++) {
+            int other = counts.keys[slot];
+            if (other >= 0) {
+                candidates[n] = other;
+                similarity[n] = (float) (counts.counts[slot] / Math.sqrt((double) popularity[course] * popularity[other]));
+                n++;
+            }
+        }
+        
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(similarity[b], similarity[a]));
+        
+        int kept = Math.min(neighborCount, n);
+        neighbors[course] = new int[kept];
+        weights[course] = new float[kept];
+        for (int i = 0; i < kept; i++) {
+            neighbors[course][i] = candidates[order[i]];
+            weights[course][i] = similarity[order[i]];
+        }
+    }
+    
+    private static void collect(Map<Long, Map<Long, LocalDateTime>> lastActivity, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            LocalDateTime at = row[2] != null ? (LocalDateTime) row[2] : LocalDateTime.MIN;
+            lastActivity.computeIfAbsent((Long) row[0], id -> new HashMap<>())
+                    .merge((Long) row[1], at, (a, b) -> a.isAfter(b) ? a : b);
+        }
+    }
+    
+    private static final class NeighborTable {
+        private final long[] courseIds;
+        private final int[][] neighbors;
+        private final float[][] weights;
+        // Course ordinals per user, most recent first
+        private final Map<Long, int[]> histories;
+        
+        private NeighborTable(long[] courseIds, int[][] neighbors, float[][] weights, Map<Long, int[]> histories) {
+            this.courseIds = courseIds;
+            this.neighbors = neighbors;
+            this.weights = weights;
+            this.histories = histories;
+        }
+    }
+    
+    // Open-addressing int -> count map for one sparse row of the co-occurrence matrix
+    private static final class IntCounter {
+        private int[] keys = newKeys(8);
+        private int[] counts = new int[8];
+        private int size;
+        
+        private void increment(int key) {
+            if (size * 2 >= keys.length) {
+                grow();
+            }
+            int slot = slotOf(keys, key);
+            if (keys[slot] < 0) {
+                keys[slot] = key;
+                size++;
+            }
+            counts[slot]++;
+        }
+        
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = newKeys(oldKeys.length * 2);
+            counts = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] >= 0) {
+                    int slot = slotOf(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+        
+        private static int slotOf(int[] keys, int key) {
+            int mask = keys.length - 1;
+            int hash = key * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] >= 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+        
+        private static int[] newKeys(int capacity) {
+            int[] keys = new int[capacity];
+            Arrays.fill(keys, -1);
+            return keys;
+        }
+    }
+}
@@ -9,7 +9,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -17,6 +21,7 @@ public class CourseService {
     
     private final CourseRepository courseRepository;
     private final CourseSectionRepository sectionRepository;
+    private final CourseCompletionCache courseCompletionCache;
     
     public List<Course> getAllCourses() {
         return courseRepository.findAll();
@@ -47,6 +52,16 @@ public class CourseService {
         return courseRepository.findByCategoryAndLevelAndDifficulty(category, level, difficulty);
     }
     
+    // Keeps the order of the given ids
+    public List<Course> getCoursesByIds(List<Long> ids) {
+        Map<Long, Course> courses = courseRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Course::getId, Function.identity()));
+        return ids.stream()
+                .map(courses::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+    
     public List<Course> getRandomCourses(
             Course.Category category, Course.Level level, Course.Difficulty difficulty, int limit) {
         return courseRepository.findRandomCourses(category, level, difficulty, limit);
@@ -65,6 +80,7 @@ public class CourseService {
     @Transactional
     public void deleteCourse(Long id) {
         courseRepository.deleteById(id);
+        courseCompletionCache.invalidateSections();
     }
     
     // Course Section methods
@@ -79,7 +95,9 @@ public class CourseService {
     
     @Transactional
     public CourseSection createSection(CourseSection section) {
-        return sectionRepository.save(section);
+        CourseSection saved = sectionRepository.save(section);
+        courseCompletionCache.invalidateSections();
+        return saved;
     }
     
     @Transactional
@@ -90,5 +108,6 @@ public class CourseService {
     @Transactional
     public void deleteSection(Long id) {
         sectionRepository.deleteById(id);
+        courseCompletionCache.invalidateSections();
     }
 }
\ No newline at end of file
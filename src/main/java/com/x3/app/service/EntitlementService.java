@@ -0,0 +1,128 @@
+package com.x3.app.service;
+
+import com.x3.app.model.Payment;
+import com.x3.app.model.UserEntitlement;
+import com.x3.app.repository.PaymentRepository;
+import com.x3.app.repository.UserEntitlementRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Materialized subscription entitlements, one row per user with the latest paid validUntil.
+ * Access checks read a short-lived per-node cache in front of a primary-key lookup, and
+ * renewal sweeps use the validUntil index.
+ */
+@Service
+public class EntitlementService {
+    
+    private final UserEntitlementRepository entitlementRepository;
+    private final PaymentRepository paymentRepository;
+    private final long ttlMillis;
+    private final Map<Long, CachedEntitlement> cache;
+    
+    public EntitlementService(UserEntitlementRepository entitlementRepository,
+                              PaymentRepository paymentRepository,
+                              @Value("${payment.entitlements.cache-size:10000}") int maxUsers,
+                              @Value("${payment.entitlements.cache-ttl-seconds:60}") long ttlSeconds) {
+        this.entitlementRepository = entitlementRepository;
+        this.paymentRepository = paymentRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<Long, CachedEntitlement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedEntitlement> eldest) {
+                return size() > maxUsers;
+            }
+        });
+    }
+    
+    public boolean hasActiveSubscription(Long userId) {
+        LocalDateTime validUntil = cachedValidUntil(userId);
+        return validUntil != null && validUntil.isAfter(LocalDateTime.now());
+    }
+    
+    public Optional<UserEntitlement> getEntitlement(Long userId) {
+        return entitlementRepository.findById(userId);
+    }
+    
+    public List<UserEntitlement> getExpiringWithin(int days) {
+        LocalDateTime now = LocalDateTime.now();
+        return entitlementRepository.findByValidUntilBetweenOrderByValidUntilAsc(now, now.plusDays(days));
+    }
+    
+    // Runs in the outbox relay transaction of the PAYMENT_PAID event
+    public void recordPaid(Payment payment) {
+        if (payment.getValidUntil() == null) {
+            return;
+        }
+        Long packageId = payment.getSubscriptionPackage() != null ? payment.getSubscriptionPackage().getId() : null;
+        entitlementRepository.extend(payment.getUser().getId(), packageId, payment.getValidUntil());
+        invalidateAfterCommit(payment.getUser().getId());
+    }
+    
+    // A refund can only shorten access, so the row is re-derived from the remaining paid payments
+    public void recordRefunded(Payment payment) {
+        Long userId = payment.getUser().getId();
+        entitlementRepository.deleteEntitlement(userId);
+        List<Payment> paid = paymentRepository.findPaidWithValidityByUserId(userId);
+        if (!paid.isEmpty()) {
+            recordPaid(paid.get(0));
+        }
+        invalidateAfterCommit(userId);
+    }
+    
+    // Returns the number of users with an entitlement afterwards
+    @Transactional
+    public long rebuild() {
+        entitlementRepository.deleteAllEntitlements();
+        entitlementRepository.extendFromPayments();
+        cache.clear();
+        return entitlementRepository.count();
+    }
+    
+    private LocalDateTime cachedValidUntil(Long userId) {
+        CachedEntitlement cached = cache.get(userId);
+        long now = System.currentTimeMillis();
+        if (cached != null && cached.loadedAt + ttlMillis > now) {
+            return cached.validUntil;
+        }
+        
+        LocalDateTime validUntil = entitlementRepository.findById(userId)
+                .map(UserEntitlement::getValidUntil)
+                .orElse(null);
+        cache.put(userId, new CachedEntitlement(validUntil, now));
+        return validUntil;
+    }
+    
+    private void invalidateAfterCommit(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.remove(userId);
+                }
+            });
+        } else {
+            cache.remove(userId);
+        }
+    }
+    
+    private static final class CachedEntitlement {
+        private final LocalDateTime validUntil;
+        private final long loadedAt;
+        
+        private CachedEntitlement(LocalDateTime validUntil, long loadedAt) {
+            this.validUntil = validUntil;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
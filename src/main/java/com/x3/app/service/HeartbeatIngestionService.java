@@ -0,0 +1,211 @@
+package com.x3.app.service;
+
+import com.x3.app.payload.request.HeartbeatRequest;
+import com.x3.app.repository.SectionProgressBatchRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Buffers video heartbeats per (user, section) and flushes them in bulk, so database writes
+ * scale with the number of active viewers per flush interval rather than the heartbeat rate.
+ * Watch time is credited against wall-clock time since the previous credit for the same
+ * (user, section), so splitting or repeating heartbeats cannot inflate it.
+ */
+@Service
+public class HeartbeatIngestionService {
+    private static final Logger logger = LoggerFactory.getLogger(HeartbeatIngestionService.class);
+    
+    private static final int STRIPES = 64;
+    
+    // Watch time a viewer can claim the first time a (user, section) is seen on this node
+    private static final int INITIAL_WATCH_CREDIT_SECONDS = 60;
+    
+    private final SectionProgressBatchRepository batchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long maxWatchBacklogMillis;
+    
+    private final Stripe[] stripes = createStripes();
+    
+    public HeartbeatIngestionService(SectionProgressBatchRepository batchRepository,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${progress.heartbeat.max-watch-backlog-seconds:600}") long maxWatchBacklogSeconds) {
+        this.batchRepository = batchRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxWatchBacklogMillis = maxWatchBacklogSeconds * 1000;
+    }
+    
+    public void ingest(Long userId, List<HeartbeatRequest.Heartbeat> heartbeats) {
+        long now = System.currentTimeMillis();
+        for (HeartbeatRequest.Heartbeat heartbeat : heartbeats) {
+            Key key = new Key(userId, heartbeat.getSectionId());
+            Stripe stripe = stripeFor(key);
+            synchronized (stripe) {
+                int watched = stripe.creditWatchTime(key, heartbeat.getWatchedSeconds(), now, maxWatchBacklogMillis);
+                stripe.pending.computeIfAbsent(key, k -> new Playback()).merge(
+                        heartbeat.getClientTimestamp(),
+                        heartbeat.getPositionSeconds(),
+                        watched);
+            }
+        }
+    }
+    
+    // Position not yet flushed, so a resume right after pausing does not jump back
+    public Integer getBufferedPosition(Long userId, Long sectionId) {
+        Key key = new Key(userId, sectionId);
+        Stripe stripe = stripeFor(key);
+        synchronized (stripe) {
+            Playback playback = stripe.pending.get(key);
+            return playback != null ? playback.lastPosition : null;
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${progress.heartbeat.flush-ms:10000}")
+    @PreDestroy
+    public void flush() {
+        long idleBefore = System.currentTimeMillis() - maxWatchBacklogMillis;
+        for (Stripe stripe : stripes) {
+            Map<Key, Playback> drained;
+            synchronized (stripe) {
+                // Past the backlog the credit would be clamped anyway, so idle viewers need no entry
+                stripe.creditedUntil.values().removeIf(creditedUntil -> creditedUntil < idleBefore);
+                if (stripe.pending.isEmpty()) {
+                    continue;
+                }
+                drained = stripe.pending;
+                stripe.pending = new HashMap<>();
+            }
+            
+            List<Object[]> rows = new ArrayList<>(drained.size());
+            drained.forEach((key, playback) -> rows.add(toRow(key, playback)));
+            
+            try {
+                // One transaction, so a batch that fails halfway is not partly applied and then retried
+                transactionTemplate.execute(status -> batchRepository.upsertPlayback(rows));
+            } catch (DataIntegrityViolationException e) {
+                // A deleted or unknown section fails the whole batch, so retry row by row and drop the bad ones
+                flushIndividually(stripe, drained);
+            } catch (RuntimeException e) {
+                logger.error("Failed to flush {} playback rows, keeping them for the next flush", rows.size(), e);
+                restore(stripe, drained);
+            }
+        }
+    }
+    
+    // Each row is tried on its own, so one failure never loses the rest of the drained batch
+    private void flushIndividually(Stripe stripe, Map<Key, Playback> drained) {
+        Map<Key, Playback> failed = new HashMap<>();
+        drained.forEach((key, playback) -> {
+            try {
+                batchRepository.upsertPlayback(Collections.singletonList(toRow(key, playback)));
+            } catch (DataIntegrityViolationException e) {
+                logger.warn("Dropping playback for user {} and section {}: {}", key.userId, key.sectionId, e.getMessage());
+            } catch (RuntimeException e) {
+                logger.warn("Failed to flush playback for user {} and section {}, keeping it for the next flush",
+                        key.userId, key.sectionId, e);
+                failed.put(key, playback);
+            }
+        });
+        if (!failed.isEmpty()) {
+            restore(stripe, failed);
+        }
+    }
+    
+    private static Object[] toRow(Key key, Playback playback) {
+        return new Object[] {key.userId, key.sectionId, playback.lastPosition, playback.maxPosition, playback.watchedSeconds};
+    }
+    
+    private void restore(Stripe stripe, Map<Key, Playback> drained) {
+        synchronized (stripe) {
+            drained.forEach((key, playback) -> stripe.pending.merge(key, playback, (newer, older) -> {
+                newer.merge(older.lastTimestamp, older.lastPosition, older.watchedSeconds);
+                newer.maxPosition = Math.max(newer.maxPosition, older.maxPosition);
+                return newer;
+            }));
+        }
+    }
+    
+    private Stripe stripeFor(Key key) {
+        return stripes[Math.floorMod(key.hashCode(), STRIPES)];
+    }
+    
+    private static Stripe[] createStripes() {
+        Stripe[] created = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            created[i] = new Stripe();
+        }
+        return created;
+    }
+    
+    private static final class Stripe {
+        private Map<Key, Playback> pending = new HashMap<>();
+        // Wall-clock millis up to which watch time has already been credited, per (user, section)
+        private final Map<Key, Long> creditedUntil = new HashMap<>();
+        
+        // Credits at most the wall-clock time since the last credit, never more than the backlog
+        private int creditWatchTime(Key key, int requestedSeconds, long now, long maxBacklogMillis) {
+            long from = creditedUntil.getOrDefault(key, now - INITIAL_WATCH_CREDIT_SECONDS * 1000L);
+            from = Math.max(from, now - maxBacklogMillis);
+            int credited = (int) Math.max(0, Math.min(requestedSeconds, (now - from) / 1000));
+            creditedUntil.put(key, from + credited * 1000L);
+            return credited;
+        }
+    }
+    
+    private static final class Playback {
+        private long lastTimestamp = Long.MIN_VALUE;
+        private int lastPosition;
+        private int maxPosition;
+        private int watchedSeconds;
+        
+        // Last write wins for the position; watch time accumulates
+        private void merge(long timestamp, int position, int watched) {
+            if (timestamp >= lastTimestamp) {
+                lastTimestamp = timestamp;
+                lastPosition = position;
+            }
+            maxPosition = Math.max(maxPosition, position);
+            watchedSeconds += watched;
+        }
+    }
+    
+    private static final class Key {
+        private final long userId;
+        private final long sectionId;
+        
+        private Key(long userId, long sectionId) {
+            this.userId = userId;
+            this.sectionId = sectionId;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return userId == other.userId && sectionId == other.sectionId;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, sectionId);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.x3.app.service;
+
+import com.x3.app.model.AiAssistanceLog;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Posts question batches as JSON to the configured model backend and reads the answers back.
+ */
+@Service
+public class HttpAiAnswerGenerator implements AiAnswerGenerator {
+    
+    private final RestTemplate restTemplate;
+    private final String url;
+    
+    public HttpAiAnswerGenerator(RestTemplateBuilder restTemplateBuilder,
+                                 @Value("${ai.generator.url:http://localhost:8090/generate}") String url,
+                                 @Value("${ai.generator.timeout-ms:20000}") long timeoutMillis) {
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(Duration.ofMillis(Math.min(timeoutMillis, 5000)))
+                .setReadTimeout(Duration.ofMillis(timeoutMillis))
+                .build();
+        this.url = url;
+    }
+    
+    @Override
+    public Map<Long, String> generate(List<AiAssistanceLog> logs) {
+        GenerateRequest request = new GenerateRequest(logs.stream()
+                .map(log -> new GenerateQuestion(log.getId(), log.getQuestion(), log.getKnowledgePoint()))
+                .collect(Collectors.toList()));
+        
+        GenerateResponse response = restTemplate.postForObject(url, request, GenerateResponse.class);
+        Map<Long, String> answers = new HashMap<>();
+        if (response != null && response.getAnswers() != null) {
+            for (GeneratedAnswer answer : response.getAnswers()) {
+                if (answer.getId() != null && answer.getAnswer() != null && !answer.getAnswer().trim().isEmpty()) {
+                    answers.put(answer.getId(), answer.getAnswer());
+                }
+            }
+        }
+        return answers;
+    }
+    
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class GenerateRequest {
+        private List<GenerateQuestion> questions = new ArrayList<>();
+    }
+    
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class GenerateQuestion {
+        private Long id;
+        private String question;
+        private String knowledgePoint;
+    }
+    
+    @Data
+    @NoArgsConstructor
+    public static class GenerateResponse {
+        private List<GeneratedAnswer> answers;
+    }
+    
+    @Data
+    @NoArgsConstructor
+    public static class GeneratedAnswer {
+        private Long id;
+        private String answer;
+    }
+}
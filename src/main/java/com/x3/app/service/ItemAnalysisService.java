@@ -0,0 +1,281 @@
+package com.x3.app.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.x3.app.model.ItemStatistic;
+import com.x3.app.model.JobWatermark;
+import com.x3.app.repository.ItemStatisticRepository;
+import com.x3.app.repository.JobWatermarkRepository;
+import com.x3.app.repository.UserAnswerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Incremental item analysis over user_answers. Each run reads answers above the last
+ * watermark in primary-key ranges, aggregates them in parallel and folds the sums into
+ * item_statistics, so nightly runs only touch new answers.
+ * <p>
+ * The watermark only advances over settled answers. Those are answers of attempts that
+ * ended at least the settle lag ago, so a transaction that committed late with a lower id
+ * is still picked up. It also stops below the first answer of a recent attempt that is
+ * still open. The sums are applied under a row lock on the watermark, so when two nodes
+ * run at once only the first one applies.
+ */
+@Service
+public class ItemAnalysisService {
+    private static final Logger logger = LoggerFactory.getLogger(ItemAnalysisService.class);
+    
+    static final String JOB_NAME = "item-statistics";
+    private static final int MAX_DISTINCT_ANSWERS = 32;
+    private static final String OTHER_ANSWERS = "__other__";
+    
+    private final UserAnswerRepository userAnswerRepository;
+    private final ItemStatisticRepository itemStatisticRepository;
+    private final JobWatermarkRepository watermarkRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int parallelism;
+    private final long settleLagSeconds;
+    private final long openAttemptHorizonHours;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    
+    public ItemAnalysisService(UserAnswerRepository userAnswerRepository,
+                               ItemStatisticRepository itemStatisticRepository,
+                               JobWatermarkRepository watermarkRepository,
+                               ObjectMapper objectMapper,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${analytics.item-statistics.chunk-size:5000}") int chunkSize,
+                               @Value("${analytics.item-statistics.parallelism:4}") int parallelism,
+                               @Value("${analytics.item-statistics.settle-lag-seconds:600}") long settleLagSeconds,
+                               @Value("${analytics.item-statistics.open-attempt-horizon-hours:24}") long openAttemptHorizonHours) {
+        this.userAnswerRepository = userAnswerRepository;
+        this.itemStatisticRepository = itemStatisticRepository;
+        this.watermarkRepository = watermarkRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.settleLagSeconds = settleLagSeconds;
+        this.openAttemptHorizonHours = openAttemptHorizonHours;
+    }
+    
+    public Optional<ItemStatistic> getItemStatistic(Long questionId) {
+        return itemStatisticRepository.findById(questionId);
+    }
+    
+    @Scheduled(cron = "${analytics.item-statistics.cron:0 30 2 * * *}")
+    public void scheduledRun() {
+        runIncremental();
+    }
+    
+    /**
+     * Processes answers added since the previous run and returns how many questions were
+     * updated, or -1 if a run is already in progress.
+     */
+    public int runIncremental() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        try {
+            transactionTemplate.execute(status -> watermarkRepository.ensureExists(JOB_NAME));
+            long fromId = watermarkRepository.findById(JOB_NAME).map(JobWatermark::getLastProcessedId).orElse(0L);
+            
+            LocalDateTime now = LocalDateTime.now();
+            Long settledId = userAnswerRepository.findMaxSettledId(fromId, now.minusSeconds(settleLagSeconds));
+            Long openId = userAnswerRepository.findMinOpenAttemptAnswerId(now.minusHours(openAttemptHorizonHours));
+            if (settledId == null) {
+                return 0;
+            }
+            long maxId = openId != null ? Math.min(settledId, openId - 1) : settledId;
+            if (maxId <= fromId) {
+                return 0;
+            }
+            
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            Map<Long, ItemAccumulator> accumulators;
+            try {
+                accumulators = pool.invoke(new RangeTask(fromId, maxId));
+            } finally {
+                pool.shutdown();
+            }
+            
+            Integer updated = transactionTemplate.execute(status -> apply(accumulators, fromId, maxId));
+            if (updated == null) {
+                logger.info("Item analysis for answers ({}, {}] was already applied by another node", fromId, maxId);
+                return 0;
+            }
+            logger.info("Item analysis processed answers ({}, {}] for {} questions", fromId, maxId, updated);
+            return updated;
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    // Returns null without applying anything if the watermark moved since the run read it
+    private Integer apply(Map<Long, ItemAccumulator> accumulators, long fromId, long maxId) {
+        JobWatermark watermark = watermarkRepository.findForUpdate(JOB_NAME)
+                .orElseThrow(() -> new IllegalStateException("Missing watermark for " + JOB_NAME));
+        if (watermark.getLastProcessedId() != fromId) {
+            return null;
+        }
+        
+        Map<Long, ItemStatistic> existing = itemStatisticRepository.findAllById(accumulators.keySet()).stream()
+                .collect(Collectors.toMap(ItemStatistic::getQuestionId, Function.identity()));
+        
+        List<ItemStatistic> statistics = new ArrayList<>(accumulators.size());
+        accumulators.forEach((questionId, accumulator) -> {
+            ItemStatistic statistic = existing.get(questionId);
+            if (statistic == null) {
+                statistic = new ItemStatistic();
+                statistic.setQuestionId(questionId);
+            }
+            
+            statistic.setResponseCount(statistic.getResponseCount() + accumulator.responses);
+            statistic.setCorrectCount(statistic.getCorrectCount() + accumulator.correct);
+            statistic.setScoreSum(statistic.getScoreSum() + accumulator.scoreSum);
+            statistic.setScoreSquareSum(statistic.getScoreSquareSum() + accumulator.scoreSquareSum);
+            statistic.setCorrectScoreSum(statistic.getCorrectScoreSum() + accumulator.correctScoreSum);
+            
+            Map<String, Long> answers = readAnswerCounts(statistic.getDistractorCounts());
+            accumulator.answerCounts.forEach((answer, count) -> addAnswer(answers, answer, count));
+            statistic.setDistractorCounts(writeAnswerCounts(answers));
+            
+            deriveIndices(statistic);
+            statistics.add(statistic);
+        });
+        itemStatisticRepository.saveAll(statistics);
+        
+        watermark.setLastProcessedId(maxId);
+        watermarkRepository.save(watermark);
+        
+        return statistics.size();
+    }
+    
+    private void deriveIndices(ItemStatistic statistic) {
+        double n = statistic.getResponseCount();
+        if (n == 0) {
+            return;
+        }
+        double sumX = statistic.getCorrectCount();
+        statistic.setPValue(sumX / n);
+        
+        // x is 0/1, so the sum of x squared equals the sum of x
+        double covariance = n * statistic.getCorrectScoreSum() - sumX * statistic.getScoreSum();
+        double varianceX = n * sumX - sumX * sumX;
+        double varianceY = n * statistic.getScoreSquareSum() - statistic.getScoreSum() * statistic.getScoreSum();
+        statistic.setDiscriminationIndex(varianceX > 0 && varianceY > 0
+                ? covariance / Math.sqrt(varianceX * varianceY)
+                : null);
+    }
+    
+    private Map<String, Long> readAnswerCounts(String json) {
+        if (json == null || json.isEmpty()) {
+            return new HashMap<>();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<HashMap<String, Long>>() {});
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Invalid distractor counts", e);
+        }
+    }
+    
+    private String writeAnswerCounts(Map<String, Long> counts) {
+        try {
+            return objectMapper.writeValueAsString(counts);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize distractor counts", e);
+        }
+    }
+    
+    // Free-text answers would grow the map without bound, so rare answers share one bucket
+    private static void addAnswer(Map<String, Long> counts, String answer, long count) {
+        String key = answer != null ? answer.trim() : "";
+        if (!counts.containsKey(key) && counts.size() >= MAX_DISTINCT_ANSWERS) {
+            key = OTHER_ANSWERS;
+        }
+        counts.merge(key, count, Long::sum);
+    }
+    
+    private static final class ItemAccumulator {
+        private long responses;
+        private long correct;
+        private double scoreSum;
+        private double scoreSquareSum;
+        private double correctScoreSum;
+        private final Map<String, Long> answerCounts = new HashMap<>();
+        
+        private void add(boolean isCorrect, String answer, double score) {
+            responses++;
+            scoreSum += score;
+            scoreSquareSum += score * score;
+            if (isCorrect) {
+                correct++;
+                correctScoreSum += score;
+            } else {
+                addAnswer(answerCounts, answer, 1);
+            }
+        }
+        
+        private void merge(ItemAccumulator other) {
+            responses += other.responses;
+            correct += other.correct;
+            scoreSum += other.scoreSum;
+            scoreSquareSum += other.scoreSquareSum;
+            correctScoreSum += other.correctScoreSum;
+            other.answerCounts.forEach((answer, count) -> addAnswer(answerCounts, answer, count));
+        }
+    }
+    
+    private final class RangeTask extends RecursiveTask<Map<Long, ItemAccumulator>> {
+        private final long fromId;
+        private final long toId;
+        
+        private RangeTask(long fromId, long toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+        
+        @Override
+        protected Map<Long, ItemAccumulator> compute() {
+            if (toId - fromId <= chunkSize) {
+                Map<Long, ItemAccumulator> accumulators = new HashMap<>();
+                for (Object[] row : userAnswerRepository.findAnswerFactsInRange(fromId, toId)) {
+                    accumulators.computeIfAbsent((Long) row[0], id -> new ItemAccumulator())
+                            .add((Boolean) row[1], (String) row[2], (Double) row[3]);
+                }
+                return accumulators;
+            }
+            
+            long middle = fromId + (toId - fromId) / 2;
+            RangeTask left = new RangeTask(fromId, middle);
+            RangeTask right = new RangeTask(middle, toId);
+            left.fork();
+            Map<Long, ItemAccumulator> merged = right.compute();
+            left.join().forEach((questionId, accumulator) ->
+                    merged.merge(questionId, accumulator, (a, b) -> {
+                        a.merge(b);
+                        return a;
+                    }));
+            return merged;
+        }
+    }
+}
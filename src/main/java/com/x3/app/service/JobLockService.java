@@ -0,0 +1,50 @@
+package com.x3.app.service;
+
+import com.x3.app.repository.JobLockRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Lease-based locks in job_locks for jobs that must run on one node at a time. A lease that
+ * is not released, for example because its node died, simply runs out.
+ */
+@Service
+public class JobLockService {
+    
+    private final JobLockRepository jobLockRepository;
+    private final TransactionTemplate transactionTemplate;
+    
+    public JobLockService(JobLockRepository jobLockRepository, PlatformTransactionManager transactionManager) {
+        this.jobLockRepository = jobLockRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+    
+    /**
+     * Takes the job's lease and returns the token that holds it, or empty if another run
+     * holds an unexpired lease.
+     */
+    public Optional<String> tryAcquire(String jobName, Duration lease) {
+        String owner = UUID.randomUUID().toString();
+        return extend(jobName, owner, lease) ? Optional.of(owner) : Optional.empty();
+    }
+    
+    // Renews a lease the caller already holds; false means it ran out and was taken over
+    public boolean extend(String jobName, String owner, Duration lease) {
+        Integer acquired = transactionTemplate.execute(status -> {
+            jobLockRepository.ensureExists(jobName);
+            LocalDateTime now = LocalDateTime.now();
+            return jobLockRepository.acquire(jobName, owner, now.plus(lease), now);
+        });
+        return acquired != null && acquired == 1;
+    }
+    
+    public void release(String jobName, String owner) {
+        transactionTemplate.execute(status -> jobLockRepository.release(jobName, owner, LocalDateTime.now()));
+    }
+}
@@ -0,0 +1,177 @@
+package com.x3.app.service;
+
+import com.x3.app.model.Course;
+import com.x3.app.model.User;
+import com.x3.app.model.UserQuizAttempt;
+import com.x3.app.payload.response.LeaderboardEntry;
+import com.x3.app.repository.UserQuizAttemptRepository;
+import com.x3.app.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Best-score leaderboards kept in Redis sorted sets, one per quiz, per course (the class a
+ * quiz belongs to) and per category/level. Rank queries are O(log n) in Redis.
+ */
+@Service
+@RequiredArgsConstructor
+public class LeaderboardService {
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardService.class);
+    
+    private static final String KEY_PREFIX = "leaderboard:";
+    
+    // Raises the member's score on every board in KEYS, never lowers it
+    private static final RedisScript<Long> BEST_SCORE_SCRIPT = new DefaultRedisScript<>(
+            "local updated = 0 " +
+            "for i, key in ipairs(KEYS) do " +
+            "  local current = redis.call('ZSCORE', key, ARGV[2]) " +
+            "  if (not current) or tonumber(current) < tonumber(ARGV[1]) then " +
+            "    redis.call('ZADD', key, ARGV[1], ARGV[2]) " +
+            "    updated = updated + 1 " +
+            "  end " +
+            "end " +
+            "return updated", Long.class);
+    
+    private final StringRedisTemplate redisTemplate;
+    private final UserRepository userRepository;
+    private final UserQuizAttemptRepository attemptRepository;
+    
+    // Generated and adaptive papers are chosen by the learner, so only the quiz's own paper is ranked
+    public void recordCompletion(UserQuizAttempt attempt) {
+        if (!attempt.usesQuizPaper()) {
+            return;
+        }
+        Long userId = attempt.getUser().getId();
+        Long quizId = attempt.getQuiz().getId();
+        Course course = attempt.getQuiz().getCourse();
+        double score = attempt.getScore();
+        
+        List<String> keys = boardKeys(quizId,
+                course != null ? course.getId() : null,
+                course != null ? course.getCategory() : null,
+                course != null ? course.getLevel() : null);
+        
+        // Redis is not part of the database transaction, so only publish committed scores
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishCompletion(keys, userId, score);
+                }
+            });
+        } else {
+            publishCompletion(keys, userId, score);
+        }
+    }
+    
+    public List<LeaderboardEntry> getTop(String board, int limit) {
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                redisTemplate.opsForZSet().reverseRangeWithScores(KEY_PREFIX + board, 0, limit - 1);
+        return toEntries(tuples, 0);
+    }
+    
+    public List<LeaderboardEntry> getAround(String board, Long userId, int k) {
+        String key = KEY_PREFIX + board;
+        Long rank = redisTemplate.opsForZSet().reverseRank(key, String.valueOf(userId));
+        if (rank == null) {
+            return Collections.emptyList();
+        }
+        
+        long start = Math.max(0, rank - k);
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                redisTemplate.opsForZSet().reverseRangeWithScores(key, start, rank + k);
+        return toEntries(tuples, start);
+    }
+    
+    /**
+     * Re-seeds every board from the best score per user and quiz. Boards are only ever raised,
+     * so this is safe to run while new attempts are being recorded.
+     */
+    public int rebuild() {
+        int submitted = 0;
+        for (Object[] row : attemptRepository.findBestScoresByUserAndQuiz()) {
+            Long userId = (Long) row[0];
+            Long quizId = (Long) row[1];
+            Long courseId = (Long) row[2];
+            Course.Category category = (Course.Category) row[3];
+            Course.Level level = (Course.Level) row[4];
+            Double score = (Double) row[5];
+            
+            submitBestScore(boardKeys(quizId, courseId, category, level), userId, score);
+            submitted++;
+        }
+        return submitted;
+    }
+    
+    public static String quizBoard(Long quizId) {
+        return "quiz:" + quizId;
+    }
+    
+    public static String courseBoard(Long courseId) {
+        return "course:" + courseId;
+    }
+    
+    public static String categoryBoard(Course.Category category, Course.Level level) {
+        return "category:" + category + ":" + level;
+    }
+    
+    private List<String> boardKeys(Long quizId, Long courseId, Course.Category category, Course.Level level) {
+        List<String> keys = new ArrayList<>(3);
+        keys.add(KEY_PREFIX + quizBoard(quizId));
+        if (courseId != null) {
+            keys.add(KEY_PREFIX + courseBoard(courseId));
+            keys.add(KEY_PREFIX + categoryBoard(category, level));
+        }
+        return keys;
+    }
+    
+    // The completion is already committed; a missed score is restored by the next rebuild()
+    private void publishCompletion(List<String> keys, Long userId, double score) {
+        try {
+            submitBestScore(keys, userId, score);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to publish score {} of user {} to leaderboards {}", score, userId, keys, e);
+        }
+    }
+    
+    private void submitBestScore(List<String> keys, Long userId, double score) {
+        redisTemplate.execute(BEST_SCORE_SCRIPT, keys, String.valueOf(score), String.valueOf(userId));
+    }
+    
+    private List<LeaderboardEntry> toEntries(Set<ZSetOperations.TypedTuple<String>> tuples, long firstRank) {
+        if (tuples == null || tuples.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        List<Long> userIds = tuples.stream()
+                .map(tuple -> Long.valueOf(tuple.getValue()))
+                .collect(Collectors.toList());
+        Map<Long, User> users = userRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        
+        List<LeaderboardEntry> entries = new ArrayList<>(tuples.size());
+        long rank = firstRank;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            Long userId = Long.valueOf(tuple.getValue());
+            User user = users.get(userId);
+            entries.add(new LeaderboardEntry(++rank, userId, user != null ? user.getName() : null, tuple.getScore()));
+        }
+        return entries;
+    }
+}
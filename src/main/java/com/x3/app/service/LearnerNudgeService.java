@@ -0,0 +1,136 @@
+package com.x3.app.service;
+
+import com.x3.app.repository.LearnerNudgeRepository;
+import com.x3.app.repository.UserSectionProgressRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Precomputes stagnant-progress nudges. A daily job walks user_section_progress in
+ * primary-key ranges and writes one learner_nudges row per stalled section, so
+ * recommendation requests read a short indexed list instead of scanning progress. The scan
+ * holds a job_locks lease, so only one node rebuilds and removes nudges at a time.
+ */
+@Service
+public class LearnerNudgeService {
+    private static final Logger logger = LoggerFactory.getLogger(LearnerNudgeService.class);
+    
+    static final String JOB_NAME = "learner-nudges";
+    
+    private final LearnerNudgeRepository nudgeRepository;
+    private final UserSectionProgressRepository progressRepository;
+    private final LearnerRiskService learnerRiskService;
+    private final JobLockService jobLockService;
+    private final TransactionTemplate transactionTemplate;
+    private final int stagnantDays;
+    private final int chunkSize;
+    private final Duration lockLease;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    
+    public LearnerNudgeService(LearnerNudgeRepository nudgeRepository,
+                               UserSectionProgressRepository progressRepository,
+                               LearnerRiskService learnerRiskService,
+                               JobLockService jobLockService,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${progress.nudges.stagnant-days:7}") int stagnantDays,
+                               @Value("${progress.nudges.chunk-size:5000}") int chunkSize,
+                               @Value("${progress.nudges.lock-lease-seconds:600}") long lockLeaseSeconds) {
+        this.nudgeRepository = nudgeRepository;
+        this.progressRepository = progressRepository;
+        this.learnerRiskService = learnerRiskService;
+        this.jobLockService = jobLockService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.stagnantDays = stagnantDays;
+        this.chunkSize = chunkSize;
+        this.lockLease = Duration.ofSeconds(lockLeaseSeconds);
+    }
+    
+    /**
+     * Returns distinct course ids for the user's nudges, longest-stalled first.
+     */
+    public List<Long> getNudgedCourseIds(Long userId, int limit) {
+        return nudgeRepository.findCourseIdsByUserId(userId).stream()
+                .distinct()
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+    
+    // Runs inside the caller's transaction, so the nudge disappears together with the progress write
+    public void clearNudge(Long userId, Long sectionId) {
+        if (nudgeRepository.deleteByUserIdAndSectionId(userId, sectionId) > 0) {
+            learnerRiskService.setStalledSections(userId, nudgeRepository.countByUserId(userId));
+        }
+    }
+    
+    @Scheduled(cron = "${progress.nudges.cron:0 0 3 * * *}")
+    public void scheduledScan() {
+        scan();
+    }
+    
+    /**
+     * Rebuilds all nudges and returns how many rows were written, or -1 if a scan is already
+     * in progress here or on another node. Each chunk commits on its own; nudges not confirmed
+     * by this scan are removed at the end.
+     */
+    public int scan() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        Optional<String> lock = Optional.empty();
+        try {
+            lock = jobLockService.tryAcquire(JOB_NAME, lockLease);
+            if (!lock.isPresent()) {
+                return -1;
+            }
+            String owner = lock.get();
+            
+            LocalDateTime scannedAt = LocalDateTime.now().withNano(0);
+            LocalDateTime cutoff = scannedAt.minusDays(stagnantDays);
+            Long maxId = progressRepository.findMaxId();
+            
+            int written = 0;
+            if (maxId != null) {
+                for (long fromId = 0; fromId < maxId; fromId += chunkSize) {
+                    renewLease(owner);
+                    long from = fromId;
+                    long to = Math.min(fromId + chunkSize, maxId);
+                    Integer rows = transactionTemplate.execute(status ->
+                            nudgeRepository.upsertStagnantInRange(from, to, cutoff, scannedAt));
+                    written += rows != null ? rows : 0;
+                }
+            }
+            
+            // Removing unconfirmed nudges after losing the lease could delete another scan's rows
+            renewLease(owner);
+            Integer removed = transactionTemplate.execute(status -> {
+                int deleted = nudgeRepository.deleteScannedBefore(scannedAt);
+                learnerRiskService.refreshStalledSections();
+                return deleted;
+            });
+            logger.info("Nudge scan up to progress id {} wrote {} rows and removed {} stale nudges",
+                    maxId, written, removed);
+            return written;
+        } finally {
+            lock.ifPresent(owner -> jobLockService.release(JOB_NAME, owner));
+            running.set(false);
+        }
+    }
+    
+    private void renewLease(String owner) {
+        if (!jobLockService.extend(JOB_NAME, owner, lockLease)) {
+            throw new IllegalStateException("Lost the " + JOB_NAME + " lease during the scan");
+        }
+    }
+}
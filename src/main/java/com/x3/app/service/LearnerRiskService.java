@@ -0,0 +1,102 @@
+package com.x3.app.service;
+
+import com.x3.app.model.LearnerRiskFlag;
+import com.x3.app.repository.LearnerRiskFlagRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Maintains per-learner risk flags as attempts, progress and AI questions are recorded, so
+ * teacher dashboards read active flags with one indexed query. Every update is a single
+ * upsert that joins the caller's transaction.
+ */
+@Service
+public class LearnerRiskService {
+    
+    // Window start for streak counters that never expire
+    private static final LocalDateTime NO_WINDOW = LocalDateTime.of(1970, 1, 1, 0, 0);
+    
+    private final LearnerRiskFlagRepository flagRepository;
+    private final int lowScoreStreak;
+    private final int stalledSections;
+    private final int skipCount;
+    private final int skipWindowDays;
+    private final int aiBurstCount;
+    private final int aiBurstWindowMinutes;
+    
+    public LearnerRiskService(LearnerRiskFlagRepository flagRepository,
+                              @Value("${progress.risk.low-score-streak:3}") int lowScoreStreak,
+                              @Value("${progress.risk.stalled-sections:3}") int stalledSections,
+                              @Value("${progress.risk.skip-count:3}") int skipCount,
+                              @Value("${progress.risk.skip-window-days:7}") int skipWindowDays,
+                              @Value("${progress.risk.ai-burst-count:5}") int aiBurstCount,
+                              @Value("${progress.risk.ai-burst-window-minutes:60}") int aiBurstWindowMinutes) {
+        this.flagRepository = flagRepository;
+        this.lowScoreStreak = lowScoreStreak;
+        this.stalledSections = stalledSections;
+        this.skipCount = skipCount;
+        this.skipWindowDays = skipWindowDays;
+        this.aiBurstCount = aiBurstCount;
+        this.aiBurstWindowMinutes = aiBurstWindowMinutes;
+    }
+    
+    // Both filters are optional and combine; newest raised first
+    public List<LearnerRiskFlag> getActiveFlags(LearnerRiskFlag.Type type, List<Long> userIds, int page, int size) {
+        PageRequest pageRequest = PageRequest.of(page, size);
+        boolean byUsers = userIds != null && !userIds.isEmpty();
+        if (byUsers && type != null) {
+            return flagRepository.findByActiveTrueAndTypeAndUserIdInOrderByRaisedAtDescIdDesc(type, userIds, pageRequest);
+        }
+        if (byUsers) {
+            return flagRepository.findByActiveTrueAndUserIdInOrderByRaisedAtDescIdDesc(userIds, pageRequest);
+        }
+        if (type != null) {
+            return flagRepository.findByActiveTrueAndTypeOrderByRaisedAtDescIdDesc(type, pageRequest);
+        }
+        return flagRepository.findByActiveTrueOrderByRaisedAtDescIdDesc(pageRequest);
+    }
+    
+    // A passing score ends the streak
+    @Transactional
+    public void recordQuizScore(Long userId, double score) {
+        if (score < RecentAttemptCache.LOW_SCORE_THRESHOLD) {
+            flagRepository.recordOccurrence(userId, LearnerRiskFlag.Type.LOW_SCORE_STREAK.name(), lowScoreStreak, NO_WINDOW);
+        } else {
+            flagRepository.reset(userId, LearnerRiskFlag.Type.LOW_SCORE_STREAK);
+        }
+    }
+    
+    @Transactional
+    public void recordSkip(Long userId) {
+        flagRepository.recordOccurrence(userId, LearnerRiskFlag.Type.REPEATED_SKIPS.name(), skipCount,
+                LocalDateTime.now().minusDays(skipWindowDays));
+    }
+    
+    @Transactional
+    public void recordAiQuestion(Long userId) {
+        flagRepository.recordOccurrence(userId, LearnerRiskFlag.Type.AI_QUESTION_BURST.name(), aiBurstCount,
+                LocalDateTime.now().minusMinutes(aiBurstWindowMinutes));
+    }
+    
+    @Transactional
+    public void setStalledSections(Long userId, long nudgeCount) {
+        flagRepository.setCounter(userId, LearnerRiskFlag.Type.STALLED_SECTIONS.name(), nudgeCount, stalledSections);
+    }
+    
+    // Called after the nudge scan has rewritten learner_nudges
+    @Transactional
+    public void refreshStalledSections() {
+        flagRepository.refreshStalledFromNudges(stalledSections);
+        flagRepository.clearStalledWithoutNudges();
+    }
+    
+    @Transactional
+    public boolean clearFlag(Long userId, LearnerRiskFlag.Type type) {
+        return flagRepository.reset(userId, type) > 0;
+    }
+}
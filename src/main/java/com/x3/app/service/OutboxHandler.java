@@ -0,0 +1,17 @@
+package com.x3.app.service;
+
+import com.x3.app.model.OutboxEvent;
+
+/**
+ * Applies the downstream effects of one outbox event type.
+ */
+public interface OutboxHandler {
+    
+    OutboxEvent.EventType eventType();
+    
+    /**
+     * Runs in the transaction that marks the event done, so a failure rolls back both and the
+     * event is retried. Handlers must still tolerate seeing an event whose effects already exist.
+     */
+    void handle(OutboxEvent event);
+}
@@ -0,0 +1,182 @@
+package com.x3.app.service;
+
+import com.x3.app.model.OutboxEvent;
+import com.x3.app.repository.OutboxEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Transactional outbox for side effects of state changes. Producers call {@link #enqueue}
+ * inside their own transaction, so the event exists exactly when the change committed; a
+ * scheduled relay claims due events in batches, leasing them so several nodes can poll without
+ * blocking each other, and runs each handler in the transaction that marks its event done.
+ * Failed events are retried with exponential backoff until they are parked as FAILED.
+ */
+@Service
+public class OutboxRelay {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+    
+    private static final int MAX_ERROR_LENGTH = 1000;
+    
+    private final OutboxEventRepository outboxEventRepository;
+    private final Map<OutboxEvent.EventType, OutboxHandler> handlers = new EnumMap<>(OutboxEvent.EventType.class);
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long leaseSeconds;
+    private final long backoffSeconds;
+    
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       List<OutboxHandler> handlers,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${payment.outbox.batch-size:100}") int batchSize,
+                       @Value("${payment.outbox.max-attempts:10}") int maxAttempts,
+                       @Value("${payment.outbox.lease-seconds:60}") long leaseSeconds,
+                       @Value("${payment.outbox.backoff-seconds:5}") long backoffSeconds) {
+        this.outboxEventRepository = outboxEventRepository;
+        for (OutboxHandler handler : handlers) {
+            if (this.handlers.put(handler.eventType(), handler) != null) {
+                throw new IllegalStateException("Duplicate outbox handler for " + handler.eventType());
+            }
+        }
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.leaseSeconds = leaseSeconds;
+        this.backoffSeconds = backoffSeconds;
+    }
+    
+    // Must run inside the transaction of the state change the event describes
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(OutboxEvent.EventType eventType, Long aggregateId) {
+        OutboxEvent event = new OutboxEvent();
+        event.setEventType(eventType);
+        event.setAggregateId(aggregateId);
+        event.setNextAttemptAt(LocalDateTime.now());
+        outboxEventRepository.save(event);
+    }
+    
+    public long countByStatus(OutboxEvent.Status status) {
+        return outboxEventRepository.countByStatus(status);
+    }
+    
+    public List<OutboxEvent> getFailedEvents(int limit) {
+        return outboxEventRepository.findByStatusOrderByIdAsc(OutboxEvent.Status.FAILED, PageRequest.of(0, limit));
+    }
+    
+    public boolean retry(Long eventId) {
+        Integer updated = transactionTemplate.execute(status ->
+                outboxEventRepository.retryFailed(eventId, LocalDateTime.now()));
+        return updated != null && updated > 0;
+    }
+    
+    /**
+     * Dispatches every due event and returns how many were handled, or -1 if a relay pass is
+     * already running on this node.
+     */
+    @Scheduled(fixedDelayString = "${payment.outbox.poll-ms:1000}")
+    public int relay() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        try {
+            int handled = 0;
+            while (true) {
+                List<OutboxEvent> batch = claim();
+                for (OutboxEvent event : batch) {
+                    if (dispatch(event)) {
+                        handled++;
+                    }
+                }
+                // Failed events are rescheduled into the future, so a full batch means more are due
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+            return handled;
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    // The lease pushes next_attempt_at forward, so events of a crashed relay become due again
+    private List<OutboxEvent> claim() {
+        List<OutboxEvent> claimed = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OutboxEvent> events = outboxEventRepository.findClaimableForUpdate(now, batchSize);
+            if (!events.isEmpty()) {
+                List<Long> ids = events.stream().map(OutboxEvent::getId).collect(Collectors.toList());
+                outboxEventRepository.lease(ids, now.plusSeconds(leaseSeconds));
+            }
+            return events;
+        });
+        return claimed != null ? claimed : Collections.emptyList();
+    }
+    
+    private boolean dispatch(OutboxEvent event) {
+        try {
+            transactionTemplate.execute(status -> {
+                // Marking first locks the row; zero means another relay finished it after our lease ran out
+                if (outboxEventRepository.markDone(event.getId(), LocalDateTime.now()) == 0) {
+                    return null;
+                }
+                OutboxHandler handler = handlers.get(event.getEventType());
+                if (handler == null) {
+                    throw new IllegalStateException("No outbox handler for " + event.getEventType());
+                }
+                handler.handle(event);
+                return null;
+            });
+            return true;
+        } catch (RuntimeException e) {
+            recordFailure(event, e);
+            return false;
+        }
+    }
+    
+    private void recordFailure(OutboxEvent event, RuntimeException cause) {
+        // The claim already counted this attempt in the database
+        int attempts = event.getAttempts() + 1;
+        boolean exhausted = attempts >= maxAttempts;
+        LocalDateTime nextAttemptAt = LocalDateTime.now().plusSeconds(backoffSeconds << Math.min(attempts - 1, 16));
+        String error = String.valueOf(cause.getMessage());
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        
+        String lastError = error;
+        try {
+            transactionTemplate.execute(status -> outboxEventRepository.markFailedAttempt(event.getId(),
+                    exhausted ? OutboxEvent.Status.FAILED : OutboxEvent.Status.PENDING, nextAttemptAt, lastError));
+        } catch (RuntimeException e) {
+            // The lease expires on its own, so the event is still retried
+            logger.error("Failed to record outbox failure for event {}", event.getId(), e);
+        }
+        
+        if (exhausted) {
+            logger.error("Outbox event {} ({} #{}) failed after {} attempts", event.getId(),
+                    event.getEventType(), event.getAggregateId(), attempts, cause);
+        } else {
+            logger.warn("Outbox event {} ({} #{}) failed, attempt {}: {}", event.getId(),
+                    event.getEventType(), event.getAggregateId(), attempts, cause.getMessage());
+        }
+    }
+}
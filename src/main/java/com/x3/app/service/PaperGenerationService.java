@@ -0,0 +1,298 @@
+package com.x3.app.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.x3.app.model.Course;
+import com.x3.app.payload.request.PaperBlueprintRequest;
+import com.x3.app.repository.QuestionRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class PaperGenerationService {
+    
+    private final QuestionRepository questionRepository;
+    private final ObjectMapper objectMapper;
+    
+    // Sorted question ids per difficulty and knowledge point, swapped atomically on rebuild
+    private volatile Map<Course.Difficulty, Map<String, long[]>> pools;
+    private volatile boolean poolsStale = true;
+    
+    public long newSeed() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+    
+    public String writeBlueprint(PaperBlueprintRequest blueprint) {
+        try {
+            return objectMapper.writeValueAsString(blueprint);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize paper blueprint", e);
+        }
+    }
+    
+    public PaperBlueprintRequest readBlueprint(String json) {
+        try {
+            return objectMapper.readValue(json, PaperBlueprintRequest.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Invalid paper blueprint", e);
+        }
+    }
+    
+    public String writeQuestionIds(List<Long> questionIds) {
+        return questionIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+    
+    public List<Long> readQuestionIds(String csv) {
+        if (csv.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return Arrays.stream(csv.split(",")).map(Long::valueOf).collect(Collectors.toList());
+    }
+    
+    /**
+     * Highest question id in the current pools. Stored with an attempt so regenerating its
+     * paper ignores questions added to the bank after the attempt started.
+     */
+    public long poolWatermark() {
+        long watermark = 0;
+        for (Map<String, long[]> byKnowledgePoint : currentPools().values()) {
+            for (long[] pool : byKnowledgePoint.values()) {
+                if (pool.length > 0) {
+                    watermark = Math.max(watermark, pool[pool.length - 1]);
+                }
+            }
+        }
+        return watermark;
+    }
+    
+    /**
+     * Generates the question ids of a paper from the questions with ids up to {@code watermark}.
+     * The same seed, blueprint and watermark always yield the same paper, because each stratum
+     * keeps the ids with the smallest seeded hash and later additions are above the watermark.
+     */
+    public List<Long> generate(PaperBlueprintRequest blueprint, long seed, long watermark) {
+        Map<Course.Difficulty, Map<String, long[]>> current = currentPools();
+        Map<Course.Difficulty, Integer> quotas = difficultyQuotas(blueprint);
+        List<String> knowledgePoints = blueprint.getKnowledgePoints();
+        
+        List<Long> selected = new ArrayList<>(blueprint.getQuestionCount());
+        for (Map.Entry<Course.Difficulty, Integer> quota : quotas.entrySet()) {
+            Map<String, long[]> byKnowledgePoint = current.getOrDefault(quota.getKey(), Collections.emptyMap());
+            
+            if (knowledgePoints == null || knowledgePoints.isEmpty()) {
+                addAll(selected, bottomK(union(byKnowledgePoint.values()), quota.getValue(), seed, watermark, null));
+                continue;
+            }
+            
+            // Spread the stratum across the requested knowledge points, then fill shortfalls from the other
+            // requested points; if they run out too the paper comes out shorter than questionCount
+            int perPoint = quota.getValue() / knowledgePoints.size();
+            int remainder = quota.getValue() % knowledgePoints.size();
+            long[] picked = new long[0];
+            for (int i = 0; i < knowledgePoints.size(); i++) {
+                long[] pool = byKnowledgePoint.getOrDefault(knowledgePoints.get(i), new long[0]);
+                picked = concat(picked, bottomK(pool, perPoint + (i < remainder ? 1 : 0), seed, watermark, null));
+            }
+            
+            int shortfall = quota.getValue() - picked.length;
+            if (shortfall > 0) {
+                List<long[]> requested = new ArrayList<>();
+                for (String knowledgePoint : knowledgePoints) {
+                    requested.add(byKnowledgePoint.getOrDefault(knowledgePoint, new long[0]));
+                }
+                long[] taken = picked.clone();
+                Arrays.sort(taken);
+                picked = concat(picked, bottomK(union(requested), shortfall, seed, watermark, taken));
+            }
+            addAll(selected, picked);
+        }
+        
+        // Deterministic shuffle so difficulties are interleaved
+        selected.sort((a, b) -> Long.compare(mix(seed, a), mix(seed, b)));
+        return selected;
+    }
+    
+    public void invalidatePools() {
+        poolsStale = true;
+    }
+    
+    @Scheduled(fixedDelayString = "${quiz.paper.pool-refresh-ms:300000}")
+    public void refreshPools() {
+        if (poolsStale || pools == null) {
+            rebuildPools();
+        }
+    }
+    
+    private Map<Course.Difficulty, Map<String, long[]>> currentPools() {
+        Map<Course.Difficulty, Map<String, long[]>> current = pools;
+        if (current == null || poolsStale) {
+            current = rebuildPools();
+        }
+        return current;
+    }
+    
+    private synchronized Map<Course.Difficulty, Map<String, long[]>> rebuildPools() {
+        poolsStale = false;
+        
+        Map<Course.Difficulty, Map<String, List<Long>>> grouped = new EnumMap<>(Course.Difficulty.class);
+        for (Object[] row : questionRepository.findAllQuestionKeys()) {
+            Long id = (Long) row[0];
+            Course.Difficulty difficulty = (Course.Difficulty) row[1];
+            String knowledgePoint = row[2] != null ? (String) row[2] : "";
+            grouped.computeIfAbsent(difficulty, d -> new HashMap<>())
+                    .computeIfAbsent(knowledgePoint, k -> new ArrayList<>())
+                    .add(id);
+        }
+        
+        Map<Course.Difficulty, Map<String, long[]>> rebuilt = new EnumMap<>(Course.Difficulty.class);
+        grouped.forEach((difficulty, byKnowledgePoint) -> {
+            Map<String, long[]> arrays = new HashMap<>();
+            byKnowledgePoint.forEach((knowledgePoint, ids) -> {
+                long[] array = ids.stream().mapToLong(Long::longValue).toArray();
+                Arrays.sort(array);
+                arrays.put(knowledgePoint, array);
+            });
+            rebuilt.put(difficulty, arrays);
+        });
+        
+        pools = rebuilt;
+        return rebuilt;
+    }
+    
+    // Largest-remainder apportionment so the quotas always add up to questionCount
+    private Map<Course.Difficulty, Integer> difficultyQuotas(PaperBlueprintRequest blueprint) {
+        int totalWeight = blueprint.getDifficultyMix().values().stream().mapToInt(Integer::intValue).sum();
+        if (totalWeight <= 0) {
+            throw new RuntimeException("Difficulty mix must have a positive total");
+        }
+        
+        Map<Course.Difficulty, Integer> quotas = new EnumMap<>(Course.Difficulty.class);
+        Map<Course.Difficulty, Double> remainders = new EnumMap<>(Course.Difficulty.class);
+        int assigned = 0;
+        for (Map.Entry<Course.Difficulty, Integer> entry : blueprint.getDifficultyMix().entrySet()) {
+            double exact = (double) blueprint.getQuestionCount() * entry.getValue() / totalWeight;
+            quotas.put(entry.getKey(), (int) exact);
+            remainders.put(entry.getKey(), exact - (int) exact);
+            assigned += (int) exact;
+        }
+        
+        List<Course.Difficulty> byRemainder = new ArrayList<>(remainders.keySet());
+        byRemainder.sort((a, b) -> Double.compare(remainders.get(b), remainders.get(a)));
+        for (int i = 0; assigned < blueprint.getQuestionCount(); i++, assigned++) {
+            Course.Difficulty difficulty = byRemainder.get(i % byRemainder.size());
+            quotas.put(difficulty, quotas.get(difficulty) + 1);
+        }
+        return quotas;
+    }
+    
+    // Keeps the k ids up to the watermark with the smallest seeded hash using a bounded max-heap
+    private static long[] bottomK(long[] pool, int k, long seed, long watermark, long[] excludedSorted) {
+        if (k <= 0 || pool.length == 0) {
+            return new long[0];
+        }
+        
+        long[] heapHash = new long[k];
+        long[] heapId = new long[k];
+        int size = 0;
+        
+        for (long id : pool) {
+            if (id > watermark) {
+                continue;
+            }
+            if (excludedSorted != null && Arrays.binarySearch(excludedSorted, id) >= 0) {
+                continue;
+            }
+            long hash = mix(seed, id);
+            if (size < k) {
+                heapHash[size] = hash;
+                heapId[size] = id;
+                siftUp(heapHash, heapId, size++);
+            } else if (hash < heapHash[0]) {
+                heapHash[0] = hash;
+                heapId[0] = id;
+                siftDown(heapHash, heapId, size);
+            }
+        }
+        return Arrays.copyOf(heapId, size);
+    }
+    
+    private static void siftUp(long[] hash, long[] id, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (hash[parent] >= hash[i]) {
+                return;
+            }
+            swap(hash, id, parent, i);
+            i = parent;
+        }
+    }
+    
+    private static void siftDown(long[] hash, long[] id, int size) {
+        int i = 0;
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && hash[left] > hash[largest]) {
+                largest = left;
+            }
+            if (right < size && hash[right] > hash[largest]) {
+                largest = right;
+            }
+            if (largest == i) {
+                return;
+            }
+            swap(hash, id, i, largest);
+            i = largest;
+        }
+    }
+    
+    private static void swap(long[] hash, long[] id, int a, int b) {
+        long h = hash[a];
+        hash[a] = hash[b];
+        hash[b] = h;
+        long v = id[a];
+        id[a] = id[b];
+        id[b] = v;
+    }
+    
+    // SplitMix64 finalizer over the seed and question id
+    private static long mix(long seed, long id) {
+        long z = seed + id * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    private static long[] union(Iterable<long[]> arrays) {
+        long[] all = new long[0];
+        for (long[] array : arrays) {
+            all = concat(all, array);
+        }
+        return all;
+    }
+    
+    private static long[] concat(long[] a, long[] b) {
+        long[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+    
+    private static void addAll(List<Long> target, long[] ids) {
+        for (long id : ids) {
+            target.add(id);
+        }
+    }
+}
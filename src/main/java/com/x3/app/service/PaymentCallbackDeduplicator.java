@@ -0,0 +1,91 @@
+package com.x3.app.service;
+
+import com.x3.app.model.Payment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers payment callbacks that were already applied, first in a bounded local map and
+ * then in Redis, so gateway retries are answered without touching the payments table.
+ */
+@Service
+public class PaymentCallbackDeduplicator {
+    private static final Logger logger = LoggerFactory.getLogger(PaymentCallbackDeduplicator.class);
+    
+    private final StringRedisTemplate redisTemplate;
+    private final Duration ttl;
+    private final Map<String, Long> recent;
+    
+    public PaymentCallbackDeduplicator(StringRedisTemplate redisTemplate,
+                                       @Value("${payment.callback.dedup-ttl-seconds:86400}") long ttlSeconds,
+                                       @Value("${payment.callback.dedup-local-size:10000}") int localSize) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.recent = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > localSize;
+            }
+        });
+    }
+    
+    public boolean isProcessed(String orderNumber, String transactionId, Payment.PaymentStatus status) {
+        String key = key(orderNumber, transactionId, status);
+        Long expiresAt = recent.get(key);
+        if (expiresAt != null) {
+            if (expiresAt > System.currentTimeMillis()) {
+                return true;
+            }
+            recent.remove(key);
+        }
+        
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+                recent.put(key, System.currentTimeMillis() + ttl.toMillis());
+                return true;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Redis dedup lookup failed for order {}: {}", orderNumber, e.getMessage());
+        }
+        return false;
+    }
+    
+    // Marked after commit, so a callback whose transaction rolled back is processed again
+    public void markProcessed(String orderNumber, String transactionId, Payment.PaymentStatus status) {
+        String key = key(orderNumber, transactionId, status);
+        Runnable mark = () -> {
+            recent.put(key, System.currentTimeMillis() + ttl.toMillis());
+            try {
+                redisTemplate.opsForValue().set(key, "1", ttl);
+            } catch (RuntimeException e) {
+                logger.warn("Redis dedup write failed for order {}: {}", orderNumber, e.getMessage());
+            }
+        };
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    mark.run();
+                }
+            });
+        } else {
+            mark.run();
+        }
+    }
+    
+    // The status is part of the key so a later refund callback is not mistaken for a retry
+    private static String key(String orderNumber, String transactionId, Payment.PaymentStatus status) {
+        return "payment:callback:" + orderNumber + ":" + (transactionId != null ? transactionId : "") + ":" + status;
+    }
+}
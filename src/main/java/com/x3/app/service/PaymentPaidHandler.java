@@ -0,0 +1,61 @@
+package com.x3.app.service;
+
+import com.x3.app.model.OutboxEvent;
+import com.x3.app.model.Payment;
+import com.x3.app.model.User;
+import com.x3.app.repository.PaymentRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Extends the payer's entitlement and credits the inviter's commission once a payment is PAID.
+ * The payer's receipt is sent by {@link PaymentReceiptHandler}.
+ */
+@Component
+@RequiredArgsConstructor
+public class PaymentPaidHandler implements OutboxHandler {
+    private static final Logger logger = LoggerFactory.getLogger(PaymentPaidHandler.class);
+    
+    private final PaymentRepository paymentRepository;
+    private final EntitlementService entitlementService;
+    private final PromotionService promotionService;
+    private final UserService userService;
+    
+    @Override
+    public OutboxEvent.EventType eventType() {
+        return OutboxEvent.EventType.PAYMENT_PAID;
+    }
+    
+    @Override
+    public void handle(OutboxEvent event) {
+        Payment payment = paymentRepository.findById(event.getAggregateId()).orElse(null);
+        // Refunded before the relay got here; the refund event re-derives the entitlement
+        if (payment == null || payment.getStatus() != Payment.PaymentStatus.PAID) {
+            return;
+        }
+        
+        entitlementService.recordPaid(payment);
+        createCommission(payment);
+        logger.info("Payment {} confirmed for user {}, access valid until {}",
+                payment.getOrderNumber(), payment.getUser().getId(), payment.getValidUntil());
+    }
+    
+    private void createCommission(Payment payment) {
+        User payer = payment.getUser();
+        if (payer.getInvitedBy() == null || promotionService.hasPromotionForPayment(payment)) {
+            return;
+        }
+        
+        Optional<User> inviter = userService.getUserById(payer.getInvitedBy());
+        if (!inviter.isPresent()) {
+            logger.warn("Inviter {} of user {} not found, no commission for payment {}",
+                    payer.getInvitedBy(), payer.getId(), payment.getOrderNumber());
+            return;
+        }
+        promotionService.createPromotion(inviter.get(), payer, payment);
+    }
+}
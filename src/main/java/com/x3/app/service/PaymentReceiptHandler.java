@@ -0,0 +1,52 @@
+package com.x3.app.service;
+
+import com.x3.app.model.OutboxEvent;
+import com.x3.app.model.Payment;
+import com.x3.app.model.User;
+import com.x3.app.repository.PaymentRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Texts the payer a receipt once a payment is PAID. A failed send is retried by the relay;
+ * the SMS cannot be rolled back, so a retry after a later failure may send it twice.
+ */
+@Component
+@RequiredArgsConstructor
+public class PaymentReceiptHandler implements OutboxHandler {
+    private static final Logger logger = LoggerFactory.getLogger(PaymentReceiptHandler.class);
+    
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    
+    private final PaymentRepository paymentRepository;
+    private final SmsService smsService;
+    
+    @Override
+    public OutboxEvent.EventType eventType() {
+        return OutboxEvent.EventType.PAYMENT_RECEIPT;
+    }
+    
+    @Override
+    public void handle(OutboxEvent event) {
+        Payment payment = paymentRepository.findById(event.getAggregateId()).orElse(null);
+        // Refunded before the relay got here, so there is nothing to confirm
+        if (payment == null || payment.getStatus() != Payment.PaymentStatus.PAID) {
+            return;
+        }
+        
+        User payer = payment.getUser();
+        if (payer.getPhone() == null || payer.getPhone().isEmpty()) {
+            logger.info("User {} has no phone number, no receipt for payment {}", payer.getId(), payment.getOrderNumber());
+            return;
+        }
+        
+        String validUntil = payment.getValidUntil() != null ? payment.getValidUntil().format(DATE_FORMAT) : "";
+        if (!smsService.sendPaymentReceipt(payer.getPhone(), payment.getOrderNumber(), validUntil)) {
+            throw new RuntimeException("Failed to send receipt for payment " + payment.getOrderNumber());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.x3.app.service;
+
+import com.x3.app.model.OutboxEvent;
+import com.x3.app.repository.PaymentRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Re-derives the payer's entitlement and takes back the inviter's commission once a payment
+ * is REFUNDED.
+ */
+@Component
+@RequiredArgsConstructor
+public class PaymentRefundedHandler implements OutboxHandler {
+    
+    private final PaymentRepository paymentRepository;
+    private final EntitlementService entitlementService;
+    private final PromotionService promotionService;
+    
+    @Override
+    public OutboxEvent.EventType eventType() {
+        return OutboxEvent.EventType.PAYMENT_REFUNDED;
+    }
+    
+    @Override
+    public void handle(OutboxEvent event) {
+        paymentRepository.findById(event.getAggregateId()).ifPresent(payment -> {
+            entitlementService.recordRefunded(payment);
+            promotionService.revokeForRefund(payment);
+        });
+    }
+}
@@ -1,8 +1,10 @@
 package com.x3.app.service;
 
+import com.x3.app.model.OutboxEvent;
 import com.x3.app.model.Payment;
 import com.x3.app.model.SubscriptionPackage;
 import com.x3.app.model.User;
+import com.x3.app.model.UserEntitlement;
 import com.x3.app.repository.PaymentRepository;
 import com.x3.app.repository.SubscriptionPackageRepository;
 import lombok.RequiredArgsConstructor;
@@ -10,7 +12,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -21,6 +26,11 @@ public class PaymentService {
     
     private final PaymentRepository paymentRepository;
     private final SubscriptionPackageRepository packageRepository;
+    private final PaymentCallbackDeduplicator callbackDeduplicator;
+    private final RevenueService revenueService;
+    private final EntitlementService entitlementService;
+    private final PendingPaymentSweeper pendingPaymentSweeper;
+    private final OutboxRelay outboxRelay;
     
     public List<Payment> getAllPayments() {
         return paymentRepository.findAll();
@@ -46,8 +56,49 @@ public class PaymentService {
         return paymentRepository.findByDateRange(startDate, endDate);
     }
     
-    public BigDecimal getSumPaidAmountByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return paymentRepository.sumPaidAmountByDateRange(startDate, endDate);
+    /**
+     * Paid amount over whole days, both inclusive, served from the daily rollups. A payment
+     * counts on the day it was paid rather than the day it was created, and a refunded payment
+     * is taken back out of that day.
+     */
+    public BigDecimal getSumPaidAmountByDateRange(LocalDate startDate, LocalDate endDate) {
+        return revenueService.getPaidAmount(startDate, endDate);
+    }
+    
+    public long getPaidCountByDateRange(LocalDate startDate, LocalDate endDate) {
+        return revenueService.getPaidCount(startDate, endDate);
+    }
+    
+    public boolean hasActiveSubscription(Long userId) {
+        return entitlementService.hasActiveSubscription(userId);
+    }
+    
+    public Optional<UserEntitlement> getEntitlement(Long userId) {
+        return entitlementService.getEntitlement(userId);
+    }
+    
+    public List<UserEntitlement> getEntitlementsExpiringWithin(int days) {
+        return entitlementService.getExpiringWithin(days);
+    }
+    
+    public long rebuildEntitlements() {
+        return entitlementService.rebuild();
+    }
+    
+    public int reconcileRevenue() {
+        return revenueService.reconcile();
+    }
+    
+    public long countOutboxEvents(OutboxEvent.Status status) {
+        return outboxRelay.countByStatus(status);
+    }
+    
+    public List<OutboxEvent> getFailedOutboxEvents(int limit) {
+        return outboxRelay.getFailedEvents(limit);
+    }
+    
+    public boolean retryOutboxEvent(Long eventId) {
+        return outboxRelay.retry(eventId);
     }
     
     @Transactional
@@ -60,32 +111,67 @@ public class PaymentService {
         payment.setStatus(Payment.PaymentStatus.PENDING);
         payment.setSubscriptionPackage(subscriptionPackage);
         
-        return paymentRepository.save(payment);
+        Payment savedPayment = paymentRepository.save(payment);
+        pendingPaymentSweeper.schedule(savedPayment.getId(),
+                savedPayment.getCreatedAt() != null ? savedPayment.getCreatedAt() : LocalDateTime.now());
+        return savedPayment;
+    }
+    
+    public boolean isDuplicateCallback(String orderNumber, Payment.PaymentStatus status, String transactionId) {
+        return callbackDeduplicator.isProcessed(orderNumber, transactionId, status);
     }
     
+    /**
+     * Applies a gateway callback at most once. The status change is a conditional update from
+     * the expected previous status, so concurrent or repeated deliveries cannot apply it twice;
+     * callbacks that do not match the current state leave the payment unchanged. Entitlement,
+     * commission and notification follow through the outbox written in the same transaction.
+     */
     @Transactional
     public Payment updatePaymentStatus(String orderNumber, Payment.PaymentStatus status, String transactionId) {
-        Optional<Payment> optionalPayment = paymentRepository.findByOrderNumber(orderNumber);
+        Payment payment = paymentRepository.findByOrderNumber(orderNumber)
+                .orElseThrow(() -> new RuntimeException("Payment not found with order number: " + orderNumber));
         
-        if (optionalPayment.isPresent()) {
-            Payment payment = optionalPayment.get();
-            payment.setStatus(status);
-            payment.setTransactionId(transactionId);
-            
-            if (status == Payment.PaymentStatus.PAID) {
-                payment.setPaidAt(LocalDateTime.now());
-                
-                // Set subscription validity period
-                SubscriptionPackage subscriptionPackage = payment.getSubscriptionPackage();
-                if (subscriptionPackage != null) {
-                    payment.setValidUntil(LocalDateTime.now().plusDays(subscriptionPackage.getDurationDays()));
-                }
+        List<Payment.PaymentStatus> expected = previousStatuses(status);
+        if (!expected.contains(payment.getStatus())) {
+            if (payment.getStatus() == status) {
+                callbackDeduplicator.markProcessed(orderNumber, transactionId, status);
             }
+            return payment;
+        }
+        
+        LocalDateTime paidAt = payment.getPaidAt();
+        LocalDateTime validUntil = payment.getValidUntil();
+        if (status == Payment.PaymentStatus.PAID) {
+            paidAt = LocalDateTime.now();
             
-            return paymentRepository.save(payment);
+            // Set subscription validity period
+            SubscriptionPackage subscriptionPackage = payment.getSubscriptionPackage();
+            if (subscriptionPackage != null) {
+                validUntil = paidAt.plusDays(subscriptionPackage.getDurationDays());
+            }
         }
         
-        throw new RuntimeException("Payment not found with order number: " + orderNumber);
+        int updated = paymentRepository.transitionStatus(orderNumber, expected, status,
+                transactionId != null ? transactionId : payment.getTransactionId(), paidAt, validUntil);
+        if (updated == 0) {
+            return paymentRepository.findByOrderNumber(orderNumber).orElse(payment);
+        }
+        
+        callbackDeduplicator.markProcessed(orderNumber, transactionId, status);
+        Payment updatedPayment = paymentRepository.findByOrderNumber(orderNumber).orElse(payment);
+        if (status != Payment.PaymentStatus.REFUNDED) {
+            pendingPaymentSweeper.cancel(updatedPayment.getId());
+        }
+        if (status == Payment.PaymentStatus.PAID) {
+            revenueService.recordPaid(updatedPayment);
+            outboxRelay.enqueue(OutboxEvent.EventType.PAYMENT_PAID, updatedPayment.getId());
+            outboxRelay.enqueue(OutboxEvent.EventType.PAYMENT_RECEIPT, updatedPayment.getId());
+        } else if (status == Payment.PaymentStatus.REFUNDED) {
+            revenueService.recordRefunded(updatedPayment);
+            outboxRelay.enqueue(OutboxEvent.EventType.PAYMENT_REFUNDED, updatedPayment.getId());
+        }
+        return updatedPayment;
     }
     
     public boolean checkForAbnormalPayments(User user, int minutesThreshold) {
@@ -95,6 +181,20 @@ public class PaymentService {
         return recentPayments.size() > 1;
     }
     
+    // Statuses a callback may move the payment from; a late PAID still revives an expired order
+    private static List<Payment.PaymentStatus> previousStatuses(Payment.PaymentStatus status) {
+        switch (status) {
+            case PAID:
+                return Arrays.asList(Payment.PaymentStatus.PENDING, Payment.PaymentStatus.EXPIRED);
+            case FAILED:
+                return Collections.singletonList(Payment.PaymentStatus.PENDING);
+            case REFUNDED:
+                return Collections.singletonList(Payment.PaymentStatus.PAID);
+            default:
+                return Collections.emptyList();
+        }
+    }
+    
     private String generateOrderNumber() {
         return "ORD" + System.currentTimeMillis() + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
     }
@@ -0,0 +1,194 @@
+package com.x3.app.service;
+
+import com.x3.app.repository.PaymentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Expires abandoned PENDING payments. Deadlines live in a Redis sorted set shared by all
+ * nodes; each node keeps the earliest deadline it knows of as a local timer, checks it against
+ * the set's earliest deadline on every tick, and once one is due atomically pops due payments
+ * from the set and expires them with one bulk UPDATE per batch.
+ * <p>
+ * Due payments are expired without querying the gateway, since there is no gateway client to
+ * ask; a paid callback that arrives afterwards is still applied, as EXPIRED payments accept it.
+ */
+@Service
+public class PendingPaymentSweeper {
+    private static final Logger logger = LoggerFactory.getLogger(PendingPaymentSweeper.class);
+    
+    static final String DEADLINES_KEY = "payments:pending-deadlines";
+    
+    // Pops up to ARGV[2] members whose deadline is at or before ARGV[1]
+    private static final RedisScript<List> CLAIM_DUE_SCRIPT = new DefaultRedisScript<>(
+            "local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+            "if #ids > 0 then redis.call('ZREM', KEYS[1], unpack(ids)) end " +
+            "return ids", List.class);
+    
+    private final StringRedisTemplate redisTemplate;
+    private final PaymentRepository paymentRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long windowMillis;
+    private final int batchSize;
+    
+    private final AtomicLong nextDeadline = new AtomicLong(Long.MAX_VALUE);
+    
+    public PendingPaymentSweeper(StringRedisTemplate redisTemplate,
+                                 PaymentRepository paymentRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${payment.pending.expire-minutes:30}") long expireMinutes,
+                                 @Value("${payment.pending.batch-size:200}") int batchSize) {
+        this.redisTemplate = redisTemplate;
+        this.paymentRepository = paymentRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.windowMillis = expireMinutes * 60_000;
+        this.batchSize = batchSize;
+    }
+    
+    public void schedule(Long paymentId, LocalDateTime createdAt) {
+        long deadline = toEpochMillis(createdAt) + windowMillis;
+        Runnable add = () -> {
+            // The payment is already committed; rehydrate() re-adds it if Redis was unavailable
+            try {
+                redisTemplate.opsForZSet().add(DEADLINES_KEY, paymentId.toString(), deadline);
+                nextDeadline.accumulateAndGet(deadline, Math::min);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to schedule expiry of pending payment {}", paymentId, e);
+            }
+        };
+        afterCommit(add);
+    }
+    
+    public void cancel(Long paymentId) {
+        afterCommit(() -> {
+            // A stale entry is harmless: expirePending only touches payments that are still PENDING
+            try {
+                redisTemplate.opsForZSet().remove(DEADLINES_KEY, paymentId.toString());
+            } catch (RuntimeException e) {
+                logger.warn("Failed to cancel expiry of payment {}", paymentId, e);
+            }
+        });
+    }
+    
+    // The local timer only knows deadlines this node scheduled or last saw, so Redis is asked too;
+    // otherwise deadlines scheduled by a node that died would wait for the next rehydrate()
+    @Scheduled(fixedDelayString = "${payment.pending.poll-ms:5000}")
+    public void tick() {
+        long now = System.currentTimeMillis();
+        if (now < nextDeadline.get()) {
+            nextDeadline.accumulateAndGet(earliestDeadline(), Math::min);
+        }
+        if (now >= nextDeadline.get()) {
+            sweep();
+        }
+    }
+    
+    /**
+     * Expires every payment whose deadline has passed and returns how many were expired.
+     */
+    public int sweep() {
+        int expired = 0;
+        long now = System.currentTimeMillis();
+        while (true) {
+            List<Long> ids = claimDue(now);
+            if (ids.isEmpty()) {
+                break;
+            }
+            try {
+                Integer updated = transactionTemplate.execute(status -> paymentRepository.expirePending(ids));
+                expired += updated != null ? updated : 0;
+            } catch (RuntimeException e) {
+                // Put the batch back so the next sweep retries it
+                ids.forEach(id -> redisTemplate.opsForZSet().add(DEADLINES_KEY, id.toString(), now));
+                logger.error("Failed to expire {} pending payments", ids.size(), e);
+                break;
+            }
+            if (ids.size() < batchSize) {
+                break;
+            }
+        }
+        
+        nextDeadline.set(earliestDeadline());
+        if (expired > 0) {
+            logger.info("Expired {} abandoned pending payments", expired);
+        }
+        return expired;
+    }
+    
+    /**
+     * Re-adds all pending payments from the (status, created_at) index, after a restart and
+     * periodically in case Redis lost the set or a node died before adding its payments.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${payment.pending.rehydrate-ms:3600000}",
+            fixedDelayString = "${payment.pending.rehydrate-ms:3600000}")
+    public void rehydrate() {
+        List<Object[]> pending = paymentRepository.findPendingPaymentTimes();
+        Set<ZSetOperations.TypedTuple<String>> tuples = pending.stream()
+                .map(row -> ZSetOperations.TypedTuple.of(row[0].toString(),
+                        (double) (toEpochMillis((LocalDateTime) row[1]) + windowMillis)))
+                .collect(Collectors.toSet());
+        if (!tuples.isEmpty()) {
+            redisTemplate.opsForZSet().add(DEADLINES_KEY, tuples);
+        }
+        nextDeadline.set(earliestDeadline());
+        logger.info("Pending payment sweeper tracks {} payments", pending.size());
+    }
+    
+    @SuppressWarnings("unchecked")
+    private List<Long> claimDue(long now) {
+        List<String> ids = redisTemplate.execute(CLAIM_DUE_SCRIPT, Collections.singletonList(DEADLINES_KEY),
+                String.valueOf(now), String.valueOf(batchSize));
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        return ids.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+    
+    private long earliestDeadline() {
+        Set<ZSetOperations.TypedTuple<String>> first = redisTemplate.opsForZSet().rangeWithScores(DEADLINES_KEY, 0, 0);
+        if (first == null || first.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        Double score = first.iterator().next().getScore();
+        return score != null ? score.longValue() : Long.MAX_VALUE;
+    }
+    
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -2,6 +2,7 @@ package com.x3.app.service;
 
 import com.x3.app.model.Payment;
 import com.x3.app.model.Promotion;
+import com.x3.app.model.SettlementBatch;
 import com.x3.app.model.User;
 import com.x3.app.repository.PromotionRepository;
 import lombok.RequiredArgsConstructor;
@@ -11,6 +12,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,6 +21,7 @@ import java.util.Optional;
 public class PromotionService {
     
     private final PromotionRepository promotionRepository;
+    private final CommissionSettlementService settlementService;
     
     public List<Promotion> getAllPromotions() {
         return promotionRepository.findAll();
@@ -44,11 +47,16 @@ public class PromotionService {
         return promotionRepository.countPromotionsByUser(user);
     }
     
+    public boolean hasPromotionForPayment(Payment payment) {
+        return promotionRepository.existsByPayment(payment);
+    }
+    
     @Transactional
     public Promotion createPromotion(User promoter, User invitedUser, Payment payment) {
         Promotion promotion = new Promotion();
         promotion.setUser(promoter);
         promotion.setInvitedUser(invitedUser);
+        promotion.setPayment(payment);
         
         // Calculate commission (e.g., 10% of payment amount)
         BigDecimal commissionRate = new BigDecimal("0.10");
@@ -58,15 +66,25 @@ public class PromotionService {
         return promotionRepository.save(promotion);
     }
     
+    /**
+     * Takes back the commission earned on a refunded payment: deleted while still unpaid, or
+     * flagged as clawed back once a settlement has paid it out, in which case a later
+     * settlement deducts it from the promoter's payout.
+     */
     @Transactional
+    public void revokeForRefund(Payment payment) {
+        if (promotionRepository.deleteUnpaidByPaymentId(payment.getId()) == 0) {
+            promotionRepository.markClawedBack(payment.getId(), LocalDateTime.now());
+        }
+    }
+    
+    // One set-based UPDATE through a settlement batch instead of an UPDATE per promotion
     public List<Promotion> markPromotionsAsPaid(User user) {
-        List<Promotion> unpaidPromotions = promotionRepository.findByUserAndPaid(user, false);
-        
-        for (Promotion promotion : unpaidPromotions) {
-            promotion.setPaid(true);
-            promotion.setPaidAt(LocalDateTime.now());
+        // Nothing to pay out, so no empty COMPLETED batch
+        if (!promotionRepository.existsByUserAndPaid(user, false)) {
+            return Collections.emptyList();
         }
-        
-        return promotionRepository.saveAll(unpaidPromotions);
+        SettlementBatch batch = settlementService.settleUsers(Collections.singletonList(user.getId()));
+        return promotionRepository.findBySettlementBatchId(batch.getId());
     }
 }
\ No newline at end of file
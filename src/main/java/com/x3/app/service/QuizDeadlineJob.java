@@ -0,0 +1,56 @@
+package com.x3.app.service;
+
+import com.x3.app.repository.UserQuizAttemptRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class QuizDeadlineJob {
+    private static final Logger logger = LoggerFactory.getLogger(QuizDeadlineJob.class);
+    
+    private static final int BATCH_SIZE = 100;
+    
+    private final QuizDeadlineWheel deadlineWheel;
+    private final QuizService quizService;
+    private final UserQuizAttemptRepository attemptRepository;
+    
+    @Scheduled(fixedRate = QuizDeadlineWheel.TICK_MILLIS)
+    public void tick() {
+        List<Long> expired = deadlineWheel.advance(System.currentTimeMillis());
+        
+        for (int from = 0; from < expired.size(); from += BATCH_SIZE) {
+            List<Long> batch = expired.subList(from, Math.min(from + BATCH_SIZE, expired.size()));
+            try {
+                int expiredCount = quizService.expireAttempts(batch);
+                logger.debug("Expired {} of {} quiz attempts past their deadline", expiredCount, batch.size());
+            } catch (RuntimeException e) {
+                logger.error("Failed to expire quiz attempts {}", batch, e);
+            }
+        }
+    }
+    
+    /**
+     * Reloads open timed attempts from the (end_time, start_time) index, both after a restart
+     * and periodically to pick up attempts started on a node that has since gone away.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${quiz.deadline.rehydrate-ms:600000}",
+            fixedDelayString = "${quiz.deadline.rehydrate-ms:600000}")
+    public void rehydrate() {
+        int scheduled = 0;
+        for (Object[] row : attemptRepository.findOpenTimedAttempts()) {
+            quizService.scheduleDeadline((Long) row[0], (LocalDateTime) row[1], (Integer) row[2]);
+            scheduled++;
+        }
+        logger.info("Quiz deadline wheel holds {} attempts after rehydrating {}", deadlineWheel.pendingCount(), scheduled);
+    }
+}
@@ -0,0 +1,100 @@
+package com.x3.app.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hashed timer wheel holding the deadline of every open timed attempt. Scheduling and
+ * cancelling are O(1), and each tick only visits the slot that is due, so tens of thousands
+ * of pending deadlines cost next to nothing between expirations.
+ */
+@Component
+public class QuizDeadlineWheel {
+    
+    static final long TICK_MILLIS = 1000;
+    static final int WHEEL_SIZE = 512;
+    
+    private final Slot[] slots = new Slot[WHEEL_SIZE];
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private long currentTick;
+    
+    public QuizDeadlineWheel() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            slots[i] = new Slot();
+        }
+        currentTick = System.currentTimeMillis() / TICK_MILLIS;
+    }
+    
+    public synchronized void schedule(long attemptId, long deadlineMillis) {
+        if (!pending.add(attemptId)) {
+            return;
+        }
+        // Deadlines already in the past fire on the next tick
+        long tick = Math.max(deadlineMillis / TICK_MILLIS, currentTick + 1);
+        slots[(int) (tick % WHEEL_SIZE)].add(attemptId, tick);
+    }
+    
+    // The slot entry stays behind and is dropped when its tick comes round
+    public void cancel(long attemptId) {
+        pending.remove(attemptId);
+    }
+    
+    public int pendingCount() {
+        return pending.size();
+    }
+    
+    /**
+     * Advances the wheel to {@code nowMillis} and returns the attempts whose deadline passed
+     * and which have not been cancelled in the meantime.
+     */
+    public synchronized List<Long> advance(long nowMillis) {
+        List<Long> expired = new ArrayList<>();
+        long targetTick = nowMillis / TICK_MILLIS;
+        
+        // After a long pause one full turn already visits every slot
+        long firstTick = Math.max(currentTick + 1, targetTick - WHEEL_SIZE + 1);
+        for (long tick = firstTick; tick <= targetTick; tick++) {
+            slots[(int) (tick % WHEEL_SIZE)].expire(targetTick, pending, expired);
+        }
+        currentTick = Math.max(currentTick, targetTick);
+        return expired;
+    }
+    
+    private static final class Slot {
+        private long[] attemptIds = new long[8];
+        private long[] ticks = new long[8];
+        private int size;
+        
+        private void add(long attemptId, long tick) {
+            if (size == attemptIds.length) {
+                attemptIds = Arrays.copyOf(attemptIds, size * 2);
+                ticks = Arrays.copyOf(ticks, size * 2);
+            }
+            attemptIds[size] = attemptId;
+            ticks[size] = tick;
+            size++;
+        }
+        
+        // Compacts in place, keeping entries that belong to a later turn of the wheel
+        private void expire(long upToTick, Set<Long> pending, List<Long> expired) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (ticks[i] <= upToTick) {
+                    if (pending.remove(attemptIds[i])) {
+                        expired.add(attemptIds[i]);
+                    }
+                } else {
+                    attemptIds[kept] = attemptIds[i];
+                    ticks[kept] = ticks[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+    }
+}
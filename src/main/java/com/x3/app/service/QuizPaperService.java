@@ -0,0 +1,173 @@
+package com.x3.app.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.x3.app.model.Question;
+import com.x3.app.model.QuestionOption;
+import com.x3.app.model.Quiz;
+import com.x3.app.payload.response.QuizPaperResponse;
+import com.x3.app.repository.QuestionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Serves answer-free quiz papers from per-node snapshots. Edits made on this node evict the
+ * snapshot after commit; question edits made on other nodes do not touch the quiz's
+ * updatedAt, so they are picked up when the snapshot expires after quiz.paper.snapshot-ttl-seconds.
+ */
+@Service
+public class QuizPaperService {
+    
+    private final QuestionRepository questionRepository;
+    private final ObjectMapper objectMapper;
+    private final long ttlMillis;
+    
+    // Serialized, answer-free papers keyed by quiz id
+    private final Map<Long, PaperSnapshot> snapshots = new ConcurrentHashMap<>();
+    // Bumped on every eviction, so a paper built from data read before an edit is never cached
+    private final Map<Long, Long> evictions = new ConcurrentHashMap<>();
+    
+    public QuizPaperService(QuestionRepository questionRepository,
+                            ObjectMapper objectMapper,
+                            @Value("${quiz.paper.snapshot-ttl-seconds:60}") long ttlSeconds) {
+        this.questionRepository = questionRepository;
+        this.objectMapper = objectMapper;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+    
+    @Transactional(readOnly = true)
+    public byte[] getPaper(Quiz quiz) {
+        long version = versionOf(quiz);
+        long now = System.currentTimeMillis();
+        PaperSnapshot snapshot = snapshots.get(quiz.getId());
+        
+        if (snapshot != null && snapshot.version == version && now - snapshot.builtAt < ttlMillis) {
+            return snapshot.json;
+        }
+        
+        long generation = evictions.getOrDefault(quiz.getId(), 0L);
+        byte[] json = buildPaper(quiz);
+        // Evictions bump the generation before removing, so this either sees the bump or is removed after it
+        snapshots.compute(quiz.getId(), (id, current) ->
+                evictions.getOrDefault(id, 0L) == generation ? new PaperSnapshot(version, now, json) : current);
+        return json;
+    }
+    
+    /**
+     * Drops the quiz's snapshot once the surrounding transaction commits, so a concurrent
+     * rebuild cannot read the edit before it is visible and cache the old paper again.
+     */
+    public void evict(Long quizId) {
+        if (quizId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(quizId);
+                }
+            });
+        } else {
+            evictNow(quizId);
+        }
+    }
+    
+    private void evictNow(Long quizId) {
+        evictions.merge(quizId, 1L, Long::sum);
+        snapshots.remove(quizId);
+    }
+    
+    private byte[] buildPaper(Quiz quiz) {
+        // Single fetch-join instead of lazily loading options per question
+        List<Question> questions = new ArrayList<>(questionRepository.findByQuizIdWithOptions(quiz.getId()));
+        questions.sort(Comparator.comparing(Question::getId));
+        
+        QuizPaperResponse paper = new QuizPaperResponse(
+                quiz.getId(), quiz.getTitle(), quiz.getTimeLimit(), quiz.getQuestionCount(), toPaperQuestions(questions));
+        return serialize(paper);
+    }
+    
+    @Transactional(readOnly = true)
+    public byte[] buildGeneratedPaper(Quiz quiz, List<Long> questionIds) {
+        if (questionIds.isEmpty()) {
+            return serialize(new QuizPaperResponse(
+                    quiz.getId(), quiz.getTitle(), quiz.getTimeLimit(), 0, new ArrayList<>()));
+        }
+        
+        Map<Long, Question> byId = questionRepository.findByIdInWithOptions(questionIds).stream()
+                .collect(Collectors.toMap(Question::getId, question -> question));
+        
+        // Keep the generated order; questions deleted from the bank since generation are dropped
+        List<Question> questions = questionIds.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        
+        QuizPaperResponse paper = new QuizPaperResponse(
+                quiz.getId(), quiz.getTitle(), quiz.getTimeLimit(), questions.size(), toPaperQuestions(questions));
+        return serialize(paper);
+    }
+    
+    @Transactional(readOnly = true)
+    public Optional<QuizPaperResponse.PaperQuestion> getPaperQuestion(Long questionId) {
+        return toPaperQuestions(questionRepository.findByIdInWithOptions(Collections.singletonList(questionId)))
+                .stream()
+                .findFirst();
+    }
+    
+    private List<QuizPaperResponse.PaperQuestion> toPaperQuestions(List<Question> questions) {
+        return questions.stream()
+                .map(question -> new QuizPaperResponse.PaperQuestion(
+                        question.getId(),
+                        question.getContent(),
+                        question.getType(),
+                        question.getDifficulty(),
+                        question.getKnowledgePoint(),
+                        question.getOptions().stream()
+                                .sorted(Comparator.comparing(QuestionOption::getOrderIndex,
+                                        Comparator.nullsLast(Comparator.naturalOrder())))
+                                .map(option -> new QuizPaperResponse.PaperOption(
+                                        option.getId(), option.getContent(), option.getOrderIndex()))
+                                .collect(Collectors.toList())))
+                .collect(Collectors.toList());
+    }
+    
+    private byte[] serialize(QuizPaperResponse paper) {
+        try {
+            return objectMapper.writeValueAsBytes(paper);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize paper for quiz: " + paper.getQuizId(), e);
+        }
+    }
+    
+    private long versionOf(Quiz quiz) {
+        return quiz.getUpdatedAt() != null ? quiz.getUpdatedAt().toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+    }
+    
+    private static final class PaperSnapshot {
+        private final long version;
+        private final long builtAt;
+        private final byte[] json;
+        
+        private PaperSnapshot(long version, long builtAt, byte[] json) {
+            this.version = version;
+            this.builtAt = builtAt;
+            this.json = json;
+        }
+    }
+}
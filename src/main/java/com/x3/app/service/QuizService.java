@@ -1,16 +1,30 @@
 package com.x3.app.service;
 
 import com.x3.app.model.*;
+import com.x3.app.payload.request.AdaptiveAnswerRequest;
+import com.x3.app.payload.request.PaperBlueprintRequest;
+import com.x3.app.payload.response.AdaptiveStepResponse;
+import com.x3.app.payload.response.QuizPaperResponse;
+import com.x3.app.payload.response.RecentAttemptSummary;
+import com.x3.app.payload.response.ScoreStatisticsResponse;
 import com.x3.app.repository.QuestionRepository;
 import com.x3.app.repository.QuizRepository;
 import com.x3.app.repository.UserQuizAttemptRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -19,6 +33,17 @@ public class QuizService {
     private final QuizRepository quizRepository;
     private final QuestionRepository questionRepository;
     private final UserQuizAttemptRepository attemptRepository;
+    private final QuizPaperService quizPaperService;
+    private final PaperGenerationService paperGenerationService;
+    private final ScoreAggregateService scoreAggregateService;
+    private final RecentAttemptCache recentAttemptCache;
+    private final LeaderboardService leaderboardService;
+    private final LearnerRiskService learnerRiskService;
+    private final AdaptiveQuestionService adaptiveQuestionService;
+    private final QuizDeadlineWheel deadlineWheel;
+    
+    @Value("${quiz.deadline.grace-seconds:30}")
+    private int deadlineGraceSeconds;
     
     public List<Quiz> getAllQuizzes() {
         return quizRepository.findAll();
@@ -53,11 +78,13 @@ public class QuizService {
     
     @Transactional
     public Quiz updateQuiz(Quiz quiz) {
+        quizPaperService.evict(quiz.getId());
         return quizRepository.save(quiz);
     }
     
     @Transactional
     public void deleteQuiz(Long id) {
+        quizPaperService.evict(id);
         quizRepository.deleteById(id);
     }
     
@@ -67,6 +94,10 @@ public class QuizService {
         return questionRepository.findByQuiz(quiz);
     }
     
+    public byte[] getQuizPaper(Quiz quiz) {
+        return quizPaperService.getPaper(quiz);
+    }
+    
     public Optional<Question> getQuestionById(Long id) {
         return questionRepository.findById(id);
     }
@@ -89,19 +120,43 @@ public class QuizService {
     
     @Transactional
     public Question createQuestion(Question question) {
+        evictPaper(question);
         return questionRepository.save(question);
     }
     
     @Transactional
     public Question updateQuestion(Question question) {
+        evictPaper(question);
         return questionRepository.save(question);
     }
     
     @Transactional
     public void deleteQuestion(Long id) {
+        questionRepository.findById(id).ifPresent(this::evictPaper);
         questionRepository.deleteById(id);
     }
     
+    // Caches are dropped after commit, so a rebuild racing the edit cannot cache uncommitted or stale data
+    private void evictPaper(Question question) {
+        Runnable invalidate = () -> {
+            paperGenerationService.invalidatePools();
+            adaptiveQuestionService.invalidateItemBank();
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate.run();
+                }
+            });
+        } else {
+            invalidate.run();
+        }
+        if (question.getQuiz() != null) {
+            quizPaperService.evict(question.getQuiz().getId());
+        }
+    }
+    
     // Quiz Attempt methods
     
     public List<UserQuizAttempt> getAttemptsByUser(User user) {
@@ -124,12 +179,116 @@ public class QuizService {
         attempt.setStartTime(LocalDateTime.now());
         attempt.setTotalQuestions(quiz.getQuestionCount());
         
-        return attemptRepository.save(attempt);
+        UserQuizAttempt savedAttempt = attemptRepository.save(attempt);
+        scheduleDeadline(savedAttempt);
+        return savedAttempt;
+    }
+    
+    @Transactional
+    public UserQuizAttempt startGeneratedQuizAttempt(User user, Quiz quiz, PaperBlueprintRequest blueprint) {
+        long seed = paperGenerationService.newSeed();
+        long watermark = paperGenerationService.poolWatermark();
+        List<Long> questionIds = paperGenerationService.generate(blueprint, seed, watermark);
+        
+        UserQuizAttempt attempt = new UserQuizAttempt();
+        attempt.setUser(user);
+        attempt.setQuiz(quiz);
+        attempt.setStartTime(LocalDateTime.now());
+        attempt.setTotalQuestions(questionIds.size());
+        attempt.setPaperSeed(seed);
+        attempt.setPaperBlueprint(paperGenerationService.writeBlueprint(blueprint));
+        attempt.setPaperWatermark(watermark);
+        attempt.setPaperQuestionIds(paperGenerationService.writeQuestionIds(questionIds));
+        
+        UserQuizAttempt savedAttempt = attemptRepository.save(attempt);
+        scheduleDeadline(savedAttempt);
+        return savedAttempt;
+    }
+    
+    public List<Long> getAttemptPaperQuestionIds(UserQuizAttempt attempt) {
+        if (attempt.getPaperSeed() == null) {
+            throw new RuntimeException("Attempt does not use a generated paper: " + attempt.getId());
+        }
+        // Pools are per node and change with question edits, so the paper served at start is the one graded
+        if (attempt.getPaperQuestionIds() != null) {
+            return paperGenerationService.readQuestionIds(attempt.getPaperQuestionIds());
+        }
+        PaperBlueprintRequest blueprint = paperGenerationService.readBlueprint(attempt.getPaperBlueprint());
+        // Older attempts are regenerated; those started before watermarks were stored draw on the whole current bank
+        long watermark = attempt.getPaperWatermark() != null ? attempt.getPaperWatermark() : Long.MAX_VALUE;
+        return paperGenerationService.generate(blueprint, attempt.getPaperSeed(), watermark);
+    }
+    
+    public byte[] getAttemptPaper(UserQuizAttempt attempt) {
+        if (attempt.getPaperSeed() == null) {
+            return quizPaperService.getPaper(attempt.getQuiz());
+        }
+        return quizPaperService.buildGeneratedPaper(attempt.getQuiz(), getAttemptPaperQuestionIds(attempt));
+    }
+    
+    @Transactional
+    public AdaptiveStepResponse startAdaptiveQuizAttempt(User user, Quiz quiz, String knowledgePoint) {
+        UserQuizAttempt attempt = new UserQuizAttempt();
+        attempt.setUser(user);
+        attempt.setQuiz(quiz);
+        attempt.setStartTime(LocalDateTime.now());
+        attempt.setTotalQuestions(0);
+        attempt.setAdaptiveKnowledgePoint(knowledgePoint);
+        
+        return nextAdaptiveStep(attemptRepository.save(attempt));
+    }
+    
+    @Transactional
+    public AdaptiveStepResponse answerAdaptiveQuestion(UserQuizAttempt attempt, AdaptiveAnswerRequest request) {
+        if (attempt.getEndTime() != null) {
+            throw new RuntimeException("Quiz attempt already completed: " + attempt.getId());
+        }
+        adaptiveQuestionService.recordAnswer(attempt, request.getQuestionId(), request.getSelectedOption(),
+                request.getTimeSpentSeconds());
+        return nextAdaptiveStep(attempt);
+    }
+    
+    public AdaptiveStepResponse nextAdaptiveStep(UserQuizAttempt attempt) {
+        QuizPaperResponse.PaperQuestion nextQuestion = adaptiveQuestionService.selectNextQuestion(attempt)
+                .flatMap(quizPaperService::getPaperQuestion)
+                .orElse(null);
+        return new AdaptiveStepResponse(attempt.getId(), adaptiveQuestionService.getAbility(attempt),
+                adaptiveQuestionService.getAnsweredCount(attempt), nextQuestion);
     }
     
+    @Transactional
+    public UserQuizAttempt completeAdaptiveQuizAttempt(UserQuizAttempt attempt) {
+        // Adaptive answers are already stored one by one, so the paper is whatever was answered
+        List<UserAnswer> answers = new ArrayList<>(attempt.getAnswers());
+        UserQuizAttempt completedAttempt = completeQuizAttempt(attempt, answers);
+        adaptiveQuestionService.endSession(attempt.getId());
+        return completedAttempt;
+    }
+    
+    /**
+     * Grades and closes an open attempt. The conditional update claims the completion before
+     * anything is changed, so a second submit or an attempt the deadline job expired meanwhile
+     * fails without touching the stored score, answers or expired flag.
+     */
     @Transactional
     public UserQuizAttempt completeQuizAttempt(UserQuizAttempt attempt, List<UserAnswer> answers) {
-        attempt.setEndTime(LocalDateTime.now());
+        LocalDateTime endTime = LocalDateTime.now();
+        if (attempt.getEndTime() != null || attemptRepository.markEnded(attempt.getId(), endTime) == 0) {
+            throw new RuntimeException("Quiz attempt already completed or expired: " + attempt.getId());
+        }
+        attempt.setEndTime(endTime);
+        if (attempt.getAdaptiveKnowledgePoint() != null) {
+            attempt.setTotalQuestions(answers.size());
+        }
+        
+        // Only answers to questions on the attempt's paper count towards a generated attempt
+        if (attempt.getPaperSeed() != null) {
+            Set<Long> paperQuestionIds = new HashSet<>(getAttemptPaperQuestionIds(attempt));
+            answers = answers.stream()
+                    .filter(answer -> answer.getQuestion() == null
+                            || paperQuestionIds.contains(answer.getQuestion().getId()))
+                    .collect(Collectors.toList());
+        }
         
         // Calculate time spent
         int timeSpentSeconds = (int) java.time.Duration.between(attempt.getStartTime(), attempt.getEndTime()).getSeconds();
@@ -144,25 +303,104 @@ public class QuizService {
             }
         }
         
-        attempt.setAnswers(answers);
+        // Replace the contents rather than the collection so orphan removal keeps working
+        attempt.getAnswers().clear();
+        attempt.getAnswers().addAll(answers);
         attempt.setCorrectAnswers(correctCount);
         
         // Calculate score (0-100)
-        double score = (double) correctCount / attempt.getTotalQuestions() * 100;
+        double score = attempt.getTotalQuestions() > 0
+                ? (double) correctCount / attempt.getTotalQuestions() * 100
+                : 0;
         attempt.setScore(score);
         
-        return attemptRepository.save(attempt);
+        UserQuizAttempt savedAttempt = attemptRepository.save(attempt);
+        
+        deadlineWheel.cancel(savedAttempt.getId());
+        scoreAggregateService.recordScore(savedAttempt);
+        recentAttemptCache.recordCompletion(savedAttempt);
+        leaderboardService.recordCompletion(savedAttempt);
+        learnerRiskService.recordQuizScore(savedAttempt.getUser().getId(), savedAttempt.getScore());
+        
+        return savedAttempt;
+    }
+    
+    /**
+     * Closes the given attempts as expired. Answers are only sent on submit, so an expired
+     * attempt is left unscored rather than graded as zero, and none of the score aggregates,
+     * leaderboards or risk signals see it. Rows are locked and re-checked so an attempt the
+     * learner submitted in the meantime, or that another node expired, is left alone.
+     */
+    @Transactional
+    public int expireAttempts(List<Long> attemptIds) {
+        List<UserQuizAttempt> openAttempts = attemptRepository.findOpenAttemptsForUpdate(attemptIds);
+        LocalDateTime endTime = LocalDateTime.now();
+        for (UserQuizAttempt attempt : openAttempts) {
+            attempt.setEndTime(endTime);
+            attempt.setTimeSpentSeconds((int) java.time.Duration.between(attempt.getStartTime(), endTime).getSeconds());
+            attempt.setExpired(true);
+        }
+        attemptRepository.saveAll(openAttempts);
+        return openAttempts.size();
+    }
+    
+    public boolean isPastDeadline(UserQuizAttempt attempt) {
+        if (attempt.getAdaptiveKnowledgePoint() != null || attempt.getQuiz().getTimeLimit() == null) {
+            return false;
+        }
+        return LocalDateTime.now().isAfter(deadlineOf(attempt.getStartTime(), attempt.getQuiz().getTimeLimit()));
+    }
+    
+    public void scheduleDeadline(Long attemptId, LocalDateTime startTime, Integer timeLimitMinutes) {
+        if (timeLimitMinutes == null || startTime == null) {
+            return;
+        }
+        long deadlineMillis = deadlineOf(startTime, timeLimitMinutes).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        deadlineWheel.schedule(attemptId, deadlineMillis);
+    }
+    
+    private void scheduleDeadline(UserQuizAttempt attempt) {
+        Long attemptId = attempt.getId();
+        LocalDateTime startTime = attempt.getStartTime();
+        Integer timeLimit = attempt.getQuiz().getTimeLimit();
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    scheduleDeadline(attemptId, startTime, timeLimit);
+                }
+            });
+        } else {
+            scheduleDeadline(attemptId, startTime, timeLimit);
+        }
+    }
+    
+    private LocalDateTime deadlineOf(LocalDateTime startTime, int timeLimitMinutes) {
+        return startTime.plusMinutes(timeLimitMinutes).plusSeconds(deadlineGraceSeconds);
     }
     
     public Long countLowScoreAttempts(User user) {
-        return attemptRepository.countLowScoreAttempts(user);
+        return recentAttemptCache.countLowScoreAttempts(user);
     }
     
-    public List<UserQuizAttempt> getLast3AttemptsByUser(User user) {
-        return attemptRepository.findLast3AttemptsByUser(user);
+    public List<RecentAttemptSummary> getLast3AttemptsByUser(User user) {
+        return recentAttemptCache.getRecentAttempts(user, 3);
     }
     
     public Double getAverageScoreByCategoryAndLevel(Course.Category category, Course.Level level) {
-        return attemptRepository.getAverageScoreByCategoryAndLevel(category, level);
+        return scoreAggregateService.getCategoryStatistics(category, level).getMean();
+    }
+    
+    public ScoreStatisticsResponse getCategoryScoreStatistics(Course.Category category, Course.Level level) {
+        return scoreAggregateService.getCategoryStatistics(category, level);
+    }
+    
+    public ScoreStatisticsResponse getQuizScoreStatistics(Long quizId) {
+        return scoreAggregateService.getQuizStatistics(quizId);
+    }
+    
+    public void rebuildScoreAggregates() {
+        scoreAggregateService.rebuildAggregates();
     }
 }
\ No newline at end of file
@@ -0,0 +1,218 @@
+package com.x3.app.service;
+
+import com.x3.app.model.User;
+import com.x3.app.model.UserQuizAttempt;
+import com.x3.app.payload.response.RecentAttemptSummary;
+import com.x3.app.repository.UserQuizAttemptRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded per-user cache of the most recent completed quiz attempts, so the low-score checks
+ * used by statistics and recommendations do not query user_quiz_attempts in the steady state.
+ * <p>
+ * Completions on this node are pushed after commit. Those made on other nodes are picked up
+ * when the window expires, after quiz.recent-attempts.ttl-seconds.
+ */
+@Service
+public class RecentAttemptCache {
+    
+    public static final double LOW_SCORE_THRESHOLD = 60;
+    static final int WINDOW_SIZE = 10;
+    private static final int VERSION_STRIPES = 1024;
+    
+    private final UserQuizAttemptRepository attemptRepository;
+    private final Map<Long, AttemptWindow> windows;
+    private final long ttlMillis;
+    
+    // Completion counters striped by user, so a rebuild is only discarded when that user (or a
+    // rare stripe neighbour) completed an attempt while it was reading
+    private final AtomicLongArray completionVersions = new AtomicLongArray(VERSION_STRIPES);
+    
+    public RecentAttemptCache(UserQuizAttemptRepository attemptRepository,
+                              @Value("${quiz.recent-attempts.cache-size:10000}") int maxUsers,
+                              @Value("${quiz.recent-attempts.ttl-seconds:60}") long ttlSeconds) {
+        this.attemptRepository = attemptRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.windows = Collections.synchronizedMap(new LinkedHashMap<Long, AttemptWindow>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, AttemptWindow> eldest) {
+                return size() > maxUsers;
+            }
+        });
+    }
+    
+    public List<RecentAttemptSummary> getRecentAttempts(User user, int limit) {
+        return window(user).latest(limit);
+    }
+    
+    public long countLowScoreAttempts(User user) {
+        return window(user).lowScoreTotal();
+    }
+    
+    /**
+     * True when the user has at least three completed attempts and at least {@code threshold}
+     * of the last three scored below {@link #LOW_SCORE_THRESHOLD}.
+     */
+    public boolean hasConsecutiveLowScores(User user, int threshold) {
+        AttemptWindow window = window(user);
+        return window.size() >= 3 && window.lowScoresInLatest(3) >= threshold;
+    }
+    
+    public void recordCompletion(UserQuizAttempt attempt) {
+        Long userId = attempt.getUser().getId();
+        long attemptId = attempt.getId();
+        long quizId = attempt.getQuiz().getId();
+        double score = attempt.getScore();
+        long completedAt = toEpochMillis(attempt.getEndTime());
+        
+        Runnable apply = () -> {
+            AttemptWindow window;
+            // Same monitor as the check-and-put in window(), so a rebuild either sees the bump or gets pushed to
+            synchronized (windows) {
+                completionVersions.incrementAndGet(stripe(userId));
+                window = windows.get(userId);
+            }
+            if (window != null) {
+                window.push(attemptId, quizId, score, completedAt);
+            }
+        };
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+    
+    public void invalidate(Long userId) {
+        windows.remove(userId);
+    }
+    
+    private AttemptWindow window(User user) {
+        long now = System.currentTimeMillis();
+        AttemptWindow window = windows.get(user.getId());
+        if (window != null && now - window.builtAt < ttlMillis) {
+            return window;
+        }
+        
+        int stripe = stripe(user.getId());
+        long version = completionVersions.get(stripe);
+        AttemptWindow rebuilt = new AttemptWindow(now);
+        
+        // Oldest first so the ring buffer ends with the latest attempt at its head
+        List<UserQuizAttempt> recent = new ArrayList<>(
+                attemptRepository.findTop10ByUserAndScoreIsNotNullOrderByEndTimeDesc(user));
+        Collections.reverse(recent);
+        for (UserQuizAttempt attempt : recent) {
+            rebuilt.push(attempt.getId(), attempt.getQuiz().getId(), attempt.getScore(), toEpochMillis(attempt.getEndTime()));
+        }
+        Long lowScoreTotal = attemptRepository.countLowScoreAttempts(user);
+        rebuilt.setLowScoreTotal(lowScoreTotal != null ? lowScoreTotal : 0);
+        
+        synchronized (windows) {
+            if (completionVersions.get(stripe) != version) {
+                return rebuilt;
+            }
+            // Keep a fresh window another thread put while this one was reading
+            AttemptWindow existing = windows.get(user.getId());
+            if (existing != null && now - existing.builtAt < ttlMillis) {
+                return existing;
+            }
+            windows.put(user.getId(), rebuilt);
+            return rebuilt;
+        }
+    }
+    
+    private static int stripe(Long userId) {
+        return (int) (userId & (VERSION_STRIPES - 1));
+    }
+    
+    private static long toEpochMillis(LocalDateTime time) {
+        return time != null ? time.toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+    }
+    
+    private static final class AttemptWindow {
+        private final long builtAt;
+        private final long[] attemptIds = new long[WINDOW_SIZE];
+        private final long[] quizIds = new long[WINDOW_SIZE];
+        private final double[] scores = new double[WINDOW_SIZE];
+        private final long[] completedAt = new long[WINDOW_SIZE];
+        private int head = -1;
+        private int size = 0;
+        private long lowScoreTotal = 0;
+        
+        private AttemptWindow(long builtAt) {
+            this.builtAt = builtAt;
+        }
+        
+        synchronized void push(long attemptId, long quizId, double score, long completedAtMillis) {
+            head = (head + 1) % WINDOW_SIZE;
+            attemptIds[head] = attemptId;
+            quizIds[head] = quizId;
+            scores[head] = score;
+            completedAt[head] = completedAtMillis;
+            size = Math.min(size + 1, WINDOW_SIZE);
+            if (score < LOW_SCORE_THRESHOLD) {
+                lowScoreTotal++;
+            }
+        }
+        
+        synchronized void setLowScoreTotal(long lowScoreTotal) {
+            this.lowScoreTotal = lowScoreTotal;
+        }
+        
+        synchronized long lowScoreTotal() {
+            return lowScoreTotal;
+        }
+        
+        synchronized int size() {
+            return size;
+        }
+        
+        synchronized int lowScoresInLatest(int n) {
+            int count = 0;
+            for (int i = 0; i < Math.min(n, size); i++) {
+                if (scores[index(i)] < LOW_SCORE_THRESHOLD) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        
+        synchronized List<RecentAttemptSummary> latest(int n) {
+            List<RecentAttemptSummary> summaries = new ArrayList<>();
+            for (int i = 0; i < Math.min(n, size); i++) {
+                int index = index(i);
+                summaries.add(new RecentAttemptSummary(
+                        attemptIds[index],
+                        quizIds[index],
+                        scores[index],
+                        LocalDateTime.ofInstant(Instant.ofEpochMilli(completedAt[index]), ZoneOffset.UTC)));
+            }
+            return summaries;
+        }
+        
+        // i-th most recent entry
+        private int index(int i) {
+            return (head - i + WINDOW_SIZE) % WINDOW_SIZE;
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package com.x3.app.service;
+
+import com.x3.app.model.User;
+import com.x3.app.payload.response.DownlineResponse;
+import com.x3.app.repository.PaymentRepository;
+import com.x3.app.repository.ReferralClosureBatchRepository;
+import com.x3.app.repository.ReferralClosureRepository;
+import com.x3.app.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Referral tree defined by {@code User.invitedBy}. Signups extend a closure table, so downline
+ * membership and ancestry are single index lookups against live data. Leader dashboards read an
+ * immutable snapshot rebuilt periodically: children are stored as CSR arrays and users are laid
+ * out in preorder, so every downline is one contiguous range and its member and revenue totals,
+ * overall or per depth, are prefix-sum differences.
+ */
+@Service
+public class ReferralGraphService {
+    private static final Logger logger = LoggerFactory.getLogger(ReferralGraphService.class);
+    
+    private final UserRepository userRepository;
+    private final PaymentRepository paymentRepository;
+    private final ReferralClosureRepository closureRepository;
+    private final ReferralClosureBatchRepository closureBatchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int backfillBatchSize;
+    private volatile ReferralGraph graph;
+    
+    private final AtomicBoolean backfilling = new AtomicBoolean(false);
+    
+    public ReferralGraphService(UserRepository userRepository,
+                                PaymentRepository paymentRepository,
+                                ReferralClosureRepository closureRepository,
+                                ReferralClosureBatchRepository closureBatchRepository,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${promotion.referrals.backfill-batch-size:1000}") int backfillBatchSize) {
+        this.userRepository = userRepository;
+        this.paymentRepository = paymentRepository;
+        this.closureRepository = closureRepository;
+        this.closureBatchRepository = closureBatchRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.backfillBatchSize = backfillBatchSize;
+    }
+    
+    // Runs inside the signup transaction
+    public void recordSignup(Long userId, Long inviterId) {
+        closureRepository.insertSelf(userId);
+        if (inviterId != null && !inviterId.equals(userId)) {
+            closureRepository.insertInviter(userId, inviterId);
+            closureRepository.insertInviterAncestors(userId, inviterId);
+        }
+    }
+    
+    /**
+     * Runs inside the user deletion transaction. The user's referrals are reattached to the
+     * user's own inviter, or become roots, in both users.invited_by and the closure table, so
+     * the closure and the next snapshot agree on the tree.
+     */
+    public void removeUser(Long userId) {
+        Long inviterId = userRepository.findById(userId)
+                .map(User::getInvitedBy)
+                .filter(id -> !id.equals(userId))
+                .orElse(null);
+        userRepository.reassignInviter(userId, inviterId);
+        
+        List<Long> ancestorIds = closureRepository.findAncestorIds(userId);
+        if (!ancestorIds.isEmpty()) {
+            List<Long> descendantIds = closureRepository.findDescendantIds(userId);
+            for (int from = 0; from < descendantIds.size(); from += backfillBatchSize) {
+                closureRepository.shortenPaths(ancestorIds,
+                        descendantIds.subList(from, Math.min(from + backfillBatchSize, descendantIds.size())));
+            }
+        }
+        closureRepository.deleteByUserId(userId);
+    }
+    
+    /**
+     * Runs inside the user update transaction when {@code invitedBy} changes. The user's subtree
+     * loses its pairs with the old ancestors and gains pairs with the new inviter and its
+     * ancestors, so downline checks follow the move at once. Rejects an inviter from inside the
+     * subtree, which would close a cycle.
+     */
+    public void moveUser(Long userId, Long inviterId) {
+        List<Long> subtreeIds = new ArrayList<>(closureRepository.findDescendantIds(userId));
+        if (inviterId != null && (inviterId.equals(userId) || subtreeIds.contains(inviterId))) {
+            throw new RuntimeException("Error: User " + inviterId + " is in the downline of user " + userId);
+        }
+        if (inviterId != null && !userRepository.existsById(inviterId)) {
+            throw new RuntimeException("Error: Inviter not found: " + inviterId);
+        }
+        closureRepository.insertSelf(userId);
+        subtreeIds.add(userId);
+        
+        List<Long> oldAncestorIds = closureRepository.findAncestorIds(userId);
+        for (int from = 0; from < subtreeIds.size(); from += backfillBatchSize) {
+            List<Long> batch = subtreeIds.subList(from, Math.min(from + backfillBatchSize, subtreeIds.size()));
+            if (!oldAncestorIds.isEmpty()) {
+                closureRepository.deletePaths(oldAncestorIds, batch);
+            }
+            if (inviterId != null) {
+                // The inviter may predate the closure table
+                closureRepository.insertSelf(inviterId);
+                closureRepository.insertSubtreePaths(userId, inviterId, batch);
+            }
+        }
+    }
+    
+    public boolean isInDownline(Long ancestorId, Long userId) {
+        return !ancestorId.equals(userId) && closureRepository.existsByAncestorIdAndDescendantId(ancestorId, userId);
+    }
+    
+    /**
+     * Returns the user's inviters, nearest first. Walks the snapshot in O(depth) and falls back
+     * to the closure table for users who signed up after it was built.
+     */
+    public List<Long> getAncestors(Long userId) {
+        ReferralGraph current = graph;
+        int node = current != null ? current.indexOf(userId) : -1;
+        if (node < 0) {
+            return closureRepository.findAncestorIds(userId);
+        }
+        
+        List<Long> ancestors = new ArrayList<>();
+        for (int ancestor = current.parent[node]; ancestor >= 0; ancestor = current.parent[ancestor]) {
+            ancestors.add(current.ids[ancestor]);
+        }
+        return ancestors;
+    }
+    
+    /**
+     * Summarizes the user's downline from the latest snapshot: totals, members and revenue for
+     * the first {@code maxDepth} levels, and the {@code referralLimit} largest direct branches.
+     * Empty until the first snapshot is built.
+     */
+    public Optional<DownlineResponse> getDownline(Long userId, int maxDepth, int referralLimit) {
+        ReferralGraph current = graph;
+        if (current == null) {
+            return Optional.empty();
+        }
+        int node = current.indexOf(userId);
+        if (node < 0) {
+            // Signed up after the snapshot; their downline shows from the next rebuild
+            return Optional.of(new DownlineResponse(userId, 0, toAmount(0), Collections.emptyList(),
+                    Collections.emptyList(), current.builtAt));
+        }
+        
+        int first = current.position[node] + 1;
+        int end = current.position[node] + current.size[node];
+        long revenue = current.revenuePrefix[end] - current.revenuePrefix[first];
+        
+        List<DownlineResponse.DepthLevel> levels = new ArrayList<>();
+        for (int level = 1; level <= maxDepth; level++) {
+            int depth = current.depth[node] + level;
+            if (depth >= current.positionsByDepth.length) {
+                break;
+            }
+            int[] positions = current.positionsByDepth[depth];
+            int from = lowerBound(positions, first);
+            int to = lowerBound(positions, end);
+            // A tree level below an empty one is empty too
+            if (from == to) {
+                break;
+            }
+            long[] prefix = current.revenueByDepthPrefix[depth];
+            levels.add(new DownlineResponse.DepthLevel(level, to - from, toAmount(prefix[to] - prefix[from])));
+        }
+        
+        List<DownlineResponse.DirectReferral> referrals = new ArrayList<>();
+        for (int k = current.childStart[node]; k < current.childStart[node + 1]; k++) {
+            int child = current.children[k];
+            // Skips the edge that closed an invitedBy cycle
+            if (current.parent[child] != node) {
+                continue;
+            }
+            int branchStart = current.position[child];
+            long branchRevenue = current.revenuePrefix[branchStart + current.size[child]] - current.revenuePrefix[branchStart];
+            referrals.add(new DownlineResponse.DirectReferral(current.ids[child], current.size[child], toAmount(branchRevenue)));
+        }
+        referrals.sort(Comparator.comparingLong(DownlineResponse.DirectReferral::getBranchMembers).reversed());
+        if (referrals.size() > referralLimit) {
+            referrals = new ArrayList<>(referrals.subList(0, referralLimit));
+        }
+        
+        return Optional.of(new DownlineResponse(userId, current.size[node] - 1, toAmount(revenue), levels,
+                referrals, current.builtAt));
+    }
+    
+    @Scheduled(fixedDelayString = "${promotion.referrals.refresh-ms:600000}")
+    public void rebuild() {
+        Map<Long, Long> revenueCents = new HashMap<>();
+        for (Object[] row : paymentRepository.sumPaidAmountByUser()) {
+            revenueCents.put((Long) row[0], ((BigDecimal) row[1]).movePointRight(2).longValue());
+        }
+        
+        ReferralGraph built = ReferralGraph.build(userRepository.findReferralEdges(), revenueCents);
+        graph = built;
+        logger.info("Built referral graph for {} users, max depth {}", built.ids.length,
+                built.positionsByDepth.length - 1);
+    }
+    
+    /**
+     * Rebuilds the snapshot and writes every (ancestor, descendant) pair it implies into the
+     * closure table, for users who predate it. Each user's ancestor rows are replaced in the same
+     * transaction as the new ones are written, so pairs left over from an old inviter are removed.
+     * Returns the number of pairs written, or -1 if a backfill is already running.
+     */
+    public long backfillClosure() {
+        if (!backfilling.compareAndSet(false, true)) {
+            return -1;
+        }
+        try {
+            rebuild();
+            ReferralGraph current = graph;
+            long written = 0;
+            List<Object[]> descendantIds = new ArrayList<>();
+            List<Object[]> rows = new ArrayList<>(backfillBatchSize);
+            for (int node = 0; node < current.ids.length; node++) {
+                descendantIds.add(new Object[]{current.ids[node]});
+                int depth = 0;
+                for (int ancestor = node; ancestor >= 0; ancestor = current.parent[ancestor]) {
+                    rows.add(new Object[]{current.ids[ancestor], current.ids[node], depth++});
+                }
+                // Flushed only between users, so a user's rows are never split across batches
+                if (rows.size() >= backfillBatchSize) {
+                    written += flush(descendantIds, rows);
+                }
+            }
+            written += flush(descendantIds, rows);
+            logger.info("Backfilled referral closure with {} pairs", written);
+            return written;
+        } finally {
+            backfilling.set(false);
+        }
+    }
+    
+    private int flush(List<Object[]> descendantIds, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        int[] counts = transactionTemplate.execute(status -> {
+            closureBatchRepository.deleteAncestors(descendantIds);
+            return closureBatchRepository.insertPairs(rows);
+        });
+        int written = 0;
+        for (int count : counts) {
+            written += Math.max(count, 0);
+        }
+        descendantIds.clear();
+        rows.clear();
+        return written;
+    }
+    
+    private static int lowerBound(int[] sorted, int key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private static BigDecimal toAmount(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+    
+    private static final class ReferralGraph {
+        // Sorted user ids; a user's node is its index here
+        private final long[] ids;
+        private final int[] parent;
+        // CSR children: the children of node v are children[childStart[v] .. childStart[v + 1])
+        private final int[] childStart;
+        private final int[] children;
+        private final int[] depth;
+        // Preorder position and subtree size; a downline is positions [position, position + size)
+        private final int[] position;
+        private final int[] size;
+        // Paid revenue in cents, prefix-summed in preorder
+        private final long[] revenuePrefix;
+        // Preorder positions of the nodes at each depth, ascending, with matching revenue prefix sums
+        private final int[][] positionsByDepth;
+        private final long[][] revenueByDepthPrefix;
+        private final LocalDateTime builtAt;
+        
+        private ReferralGraph(long[] ids, int[] parent, int[] childStart, int[] children, int[] depth,
+                              int[] position, int[] size, long[] revenuePrefix, int[][] positionsByDepth,
+                              long[][] revenueByDepthPrefix, LocalDateTime builtAt) {
+            this.ids = ids;
+            this.parent = parent;
+            this.childStart = childStart;
+            this.children = children;
+            this.depth = depth;
+            this.position = position;
+            this.size = size;
+            this.revenuePrefix = revenuePrefix;
+            this.positionsByDepth = positionsByDepth;
+            this.revenueByDepthPrefix = revenueByDepthPrefix;
+            this.builtAt = builtAt;
+        }
+        
+        private int indexOf(Long userId) {
+            int index = Arrays.binarySearch(ids, userId);
+            return index >= 0 ? index : -1;
+        }
+        
+        // Edges are (user id, inviter id) ordered by user id
+        private static ReferralGraph build(List<Object[]> edges, Map<Long, Long> revenueCents) {
+            LocalDateTime builtAt = LocalDateTime.now();
+            int n = edges.size();
+            long[] ids = new long[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = (Long) edges.get(i)[0];
+            }
+            
+            int[] parent = new int[n];
+            int[] childStart = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                Long inviterId = (Long) edges.get(i)[1];
+                int inviter = inviterId != null ? Arrays.binarySearch(ids, inviterId) : -1;
+                parent[i] = inviter >= 0 && inviter != i ? inviter : -1;
+                if (parent[i] >= 0) {
+                    childStart[parent[i] + 1]++;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                childStart[i + 1] += childStart[i];
+            }
+            int[] children = new int[childStart[n]];
+            int[] next = Arrays.copyOf(childStart, n);
+            for (int i = 0; i < n; i++) {
+                if (parent[i] >= 0) {
+                    children[next[parent[i]]++] = i;
+                }
+            }
+            
+            int[] depth = new int[n];
+            int[] position = new int[n];
+            int[] order = new int[n];
+            Arrays.fill(position, -1);
+            int[] stack = new int[n];
+            int visited = 0;
+            for (int root = 0; root < n; root++) {
+                if (parent[root] < 0) {
+                    visited = visit(root, childStart, children, depth, position, order, stack, visited);
+                }
+            }
+            // Users on an invitedBy cycle are unreachable from any root; cut the cycle at the first one seen
+            for (int node = 0; node < n; node++) {
+                if (position[node] < 0) {
+                    parent[node] = -1;
+                    depth[node] = 0;
+                    visited = visit(node, childStart, children, depth, position, order, stack, visited);
+                }
+            }
+            
+            int[] size = new int[n];
+            Arrays.fill(size, 1);
+            for (int pos = n - 1; pos >= 0; pos--) {
+                int node = order[pos];
+                if (parent[node] >= 0) {
+                    size[parent[node]] += size[node];
+                }
+            }
+            
+            long[] revenuePrefix = new long[n + 1];
+            int maxDepth = -1;
+            for (int pos = 0; pos < n; pos++) {
+                int node = order[pos];
+                revenuePrefix[pos + 1] = revenuePrefix[pos] + revenueCents.getOrDefault(ids[node], 0L);
+                maxDepth = Math.max(maxDepth, depth[node]);
+            }
+            
+            int[] levelCounts = new int[maxDepth + 1];
+            for (int node = 0; node < n; node++) {
+                levelCounts[depth[node]]++;
+            }
+            int[][] positionsByDepth = new int[maxDepth + 1][];
+            long[][] revenueByDepthPrefix = new long[maxDepth + 1][];
+            for (int d = 0; d <= maxDepth; d++) {
+                positionsByDepth[d] = new int[levelCounts[d]];
+                revenueByDepthPrefix[d] = new long[levelCounts[d] + 1];
+                levelCounts[d] = 0;
+            }
+            for (int pos = 0; pos < n; pos++) {
+                int node = order[pos];
+                int d = depth[node];
+                int k = levelCounts[d]++;
+                positionsByDepth[d][k] = pos;
+                revenueByDepthPrefix[d][k + 1] = revenueByDepthPrefix[d][k] + (revenuePrefix[pos + 1] - revenuePrefix[pos]);
+            }
+            
+            return new ReferralGraph(ids, parent, childStart, children, depth, position, size, revenuePrefix,
+                    positionsByDepth, revenueByDepthPrefix, builtAt);
+        }
+        
+        // Iterative preorder from root; returns the next free position
+        private static int visit(int root, int[] childStart, int[] children, int[] depth, int[] position,
+                                 int[] order, int[] stack, int visited) {
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                int node = stack[--top];
+                position[node] = visited;
+                order[visited++] = node;
+                // Pushed in reverse so children come out in id order
+                for (int k = childStart[node + 1] - 1; k >= childStart[node]; k--) {
+                    int child = children[k];
+                    if (position[child] < 0) {
+                        depth[child] = depth[node] + 1;
+                        stack[top++] = child;
+                    }
+                }
+            }
+            return visited;
+        }
+    }
+}
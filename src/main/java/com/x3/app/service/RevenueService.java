@@ -0,0 +1,348 @@
+package com.x3.app.service;
+
+import com.x3.app.model.Payment;
+import com.x3.app.model.RevenueDaily;
+import com.x3.app.repository.PaymentRepository;
+import com.x3.app.repository.RevenueDailyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paid revenue per day, package and payment method. Rollups are updated as payments are paid
+ * or refunded; range totals come from an in-memory prefix-sum array over days, rebuilt from the
+ * small rollup table after changes and at least every prefix-sums TTL, so changes made on other
+ * nodes show up too. A reconciliation job re-derives the rollups from payments on one node at a
+ * time.
+ */
+@Service
+public class RevenueService {
+    private static final Logger logger = LoggerFactory.getLogger(RevenueService.class);
+    
+    static final String RECONCILE_JOB = "revenue-reconcile";
+    
+    private final RevenueDailyRepository revenueRepository;
+    private final PaymentRepository paymentRepository;
+    private final JobLockService jobLockService;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int parallelism;
+    private final long prefixSumsTtlMillis;
+    private final Duration reconcileLease;
+    private final AtomicBoolean reconciling = new AtomicBoolean(false);
+    
+    // Bumped on every rollup change so a rebuild racing with a payment is not kept
+    private final AtomicLong changeSequence = new AtomicLong();
+    private volatile PrefixSums prefixSums;
+    
+    public RevenueService(RevenueDailyRepository revenueRepository,
+                          PaymentRepository paymentRepository,
+                          JobLockService jobLockService,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${payment.revenue.reconcile-chunk-size:5000}") int chunkSize,
+                          @Value("${payment.revenue.reconcile-parallelism:4}") int parallelism,
+                          @Value("${payment.revenue.prefix-sums-ttl-seconds:30}") long prefixSumsTtlSeconds,
+                          @Value("${payment.revenue.reconcile-lock-lease-seconds:3600}") long reconcileLeaseSeconds) {
+        this.revenueRepository = revenueRepository;
+        this.paymentRepository = paymentRepository;
+        this.jobLockService = jobLockService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.prefixSumsTtlMillis = prefixSumsTtlSeconds * 1000;
+        this.reconcileLease = Duration.ofSeconds(reconcileLeaseSeconds);
+    }
+    
+    public void recordPaid(Payment payment) {
+        addRevenue(payment, 1);
+    }
+    
+    public void recordRefunded(Payment payment) {
+        addRevenue(payment, -1);
+    }
+    
+    public BigDecimal getPaidAmount(LocalDate startDate, LocalDate endDate) {
+        return BigDecimal.valueOf(prefixSums().amountCents(startDate, endDate), 2);
+    }
+    
+    public long getPaidCount(LocalDate startDate, LocalDate endDate) {
+        return prefixSums().count(startDate, endDate);
+    }
+    
+    @Scheduled(cron = "${payment.revenue.reconcile-cron:0 15 3 * * *}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+    
+    /**
+     * Recomputes the rollups of past days from the payments table in parallel primary-key
+     * chunks and replaces the stored ones. Today is left to the incremental updates, which
+     * may still be landing. Returns the number of rollup rows that differed, or -1 if a
+     * reconciliation is already running on this or another node.
+     * <p>
+     * The past rollups are locked before the scan starts and stay locked until they are
+     * replaced. A payment event for a past day either committed before the lock, so the scan
+     * sees it, or waits and applies its delta on top of the replaced rows.
+     */
+    public int reconcile() {
+        if (!reconciling.compareAndSet(false, true)) {
+            return -1;
+        }
+        Optional<String> lock = Optional.empty();
+        try {
+            lock = jobLockService.tryAcquire(RECONCILE_JOB, reconcileLease);
+            if (!lock.isPresent()) {
+                return -1;
+            }
+            
+            LocalDate today = LocalDate.now();
+            int[] rebuilt = new int[1];
+            Integer mismatches = transactionTemplate.execute(status -> {
+                List<RevenueDaily> locked = revenueRepository.findByDayBeforeForUpdate(today);
+                Map<RollupKey, long[]> derived = derive();
+                derived.keySet().removeIf(key -> !key.day.isBefore(today));
+                rebuilt[0] = derived.size();
+                return replaceRollups(locked, derived, today);
+            });
+            invalidatePrefixSums();
+            logger.info("Revenue reconciliation rebuilt {} rollups, {} differed", rebuilt[0], mismatches);
+            return mismatches != null ? mismatches : 0;
+        } finally {
+            lock.ifPresent(owner -> jobLockService.release(RECONCILE_JOB, owner));
+            reconciling.set(false);
+        }
+    }
+    
+    // Chunks are read on the pool's own connections, outside the caller's transaction
+    private Map<RollupKey, long[]> derive() {
+        Long maxId = paymentRepository.findMaxId();
+        if (maxId == null) {
+            return new HashMap<>();
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new RangeTask(0, maxId));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private int replaceRollups(List<RevenueDaily> current, Map<RollupKey, long[]> derived, LocalDate before) {
+        Map<RollupKey, long[]> stored = new HashMap<>();
+        for (RevenueDaily rollup : current) {
+            stored.put(new RollupKey(rollup.getDay(), rollup.getPackageId(), rollup.getPaymentMethod()),
+                    new long[]{rollup.getAmountCents(), rollup.getPaymentCount()});
+        }
+        
+        int mismatches = 0;
+        for (Map.Entry<RollupKey, long[]> entry : derived.entrySet()) {
+            long[] existing = stored.remove(entry.getKey());
+            if (existing == null || existing[0] != entry.getValue()[0] || existing[1] != entry.getValue()[1]) {
+                mismatches++;
+            }
+        }
+        mismatches += (int) stored.values().stream().filter(totals -> totals[0] != 0 || totals[1] != 0).count();
+        
+        revenueRepository.deleteByDayBefore(before);
+        List<RevenueDaily> rollups = new ArrayList<>(derived.size());
+        derived.forEach((key, totals) -> {
+            RevenueDaily rollup = new RevenueDaily();
+            rollup.setDay(key.day);
+            rollup.setPackageId(key.packageId);
+            rollup.setPaymentMethod(key.paymentMethod);
+            rollup.setAmountCents(totals[0]);
+            rollup.setPaymentCount(totals[1]);
+            rollups.add(rollup);
+        });
+        revenueRepository.saveAll(rollups);
+        return mismatches;
+    }
+    
+    private void addRevenue(Payment payment, int sign) {
+        LocalDateTime paidAt = payment.getPaidAt() != null ? payment.getPaidAt() : payment.getCreatedAt();
+        Long packageId = payment.getSubscriptionPackage() != null ? payment.getSubscriptionPackage().getId() : 0L;
+        revenueRepository.addRevenue(paidAt.toLocalDate(), packageId, payment.getPaymentMethod().name(),
+                sign * toCents(payment.getAmount()), sign);
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidatePrefixSums();
+                }
+            });
+        } else {
+            invalidatePrefixSums();
+        }
+    }
+    
+    private void invalidatePrefixSums() {
+        changeSequence.incrementAndGet();
+        prefixSums = null;
+    }
+    
+    private PrefixSums prefixSums() {
+        PrefixSums current = prefixSums;
+        if (current != null && System.currentTimeMillis() - current.builtAt < prefixSumsTtlMillis) {
+            return current;
+        }
+        
+        long sequence = changeSequence.get();
+        List<Object[]> rows = revenueRepository.findDailyTotals();
+        PrefixSums rebuilt = PrefixSums.build(rows);
+        if (changeSequence.get() == sequence) {
+            prefixSums = rebuilt;
+        }
+        return rebuilt;
+    }
+    
+    private static long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).longValueExact();
+    }
+    
+    // Cumulative totals over consecutive days, so any day range is two lookups
+    private static final class PrefixSums {
+        private final LocalDate firstDay;
+        private final long[] amountCents;
+        private final long[] counts;
+        private final long builtAt = System.currentTimeMillis();
+        
+        private PrefixSums(LocalDate firstDay, long[] amountCents, long[] counts) {
+            this.firstDay = firstDay;
+            this.amountCents = amountCents;
+            this.counts = counts;
+        }
+        
+        private static PrefixSums build(List<Object[]> rows) {
+            if (rows.isEmpty()) {
+                return new PrefixSums(LocalDate.now(), new long[1], new long[1]);
+            }
+            LocalDate firstDay = (LocalDate) rows.get(0)[0];
+            LocalDate lastDay = (LocalDate) rows.get(rows.size() - 1)[0];
+            int days = (int) ChronoUnit.DAYS.between(firstDay, lastDay) + 1;
+            
+            long[] amountCents = new long[days + 1];
+            long[] counts = new long[days + 1];
+            for (Object[] row : rows) {
+                int index = (int) ChronoUnit.DAYS.between(firstDay, (LocalDate) row[0]) + 1;
+                amountCents[index] = ((Number) row[1]).longValue();
+                counts[index] = ((Number) row[2]).longValue();
+            }
+            for (int i = 1; i <= days; i++) {
+                amountCents[i] += amountCents[i - 1];
+                counts[i] += counts[i - 1];
+            }
+            return new PrefixSums(firstDay, amountCents, counts);
+        }
+        
+        private long amountCents(LocalDate startDate, LocalDate endDate) {
+            return range(amountCents, startDate, endDate);
+        }
+        
+        private long count(LocalDate startDate, LocalDate endDate) {
+            return range(counts, startDate, endDate);
+        }
+        
+        // Inclusive of both days; days outside the covered span contribute nothing
+        private long range(long[] prefix, LocalDate startDate, LocalDate endDate) {
+            int last = prefix.length - 1;
+            int from = clamp(ChronoUnit.DAYS.between(firstDay, startDate), last);
+            int to = clamp(ChronoUnit.DAYS.between(firstDay, endDate) + 1, last);
+            return to > from ? prefix[to] - prefix[from] : 0;
+        }
+        
+        private static int clamp(long index, int last) {
+            return (int) Math.max(0, Math.min(index, last));
+        }
+    }
+    
+    private static final class RollupKey {
+        private final LocalDate day;
+        private final Long packageId;
+        private final Payment.PaymentMethod paymentMethod;
+        
+        private RollupKey(LocalDate day, Long packageId, Payment.PaymentMethod paymentMethod) {
+            this.day = day;
+            this.packageId = packageId;
+            this.paymentMethod = paymentMethod;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RollupKey)) {
+                return false;
+            }
+            RollupKey other = (RollupKey) o;
+            return day.equals(other.day) && packageId.equals(other.packageId) && paymentMethod == other.paymentMethod;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(day, packageId, paymentMethod);
+        }
+    }
+    
+    private final class RangeTask extends RecursiveTask<Map<RollupKey, long[]>> {
+        private final long fromId;
+        private final long toId;
+        
+        private RangeTask(long fromId, long toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+        
+        @Override
+        protected Map<RollupKey, long[]> compute() {
+            if (toId - fromId <= chunkSize) {
+                Map<RollupKey, long[]> totals = new HashMap<>();
+                for (Object[] row : paymentRepository.findPaidFactsInRange(fromId, toId)) {
+                    LocalDateTime paidAt = (LocalDateTime) row[0];
+                    Long packageId = row[1] != null ? (Long) row[1] : 0L;
+                    long[] sums = totals.computeIfAbsent(
+                            new RollupKey(paidAt.toLocalDate(), packageId, (Payment.PaymentMethod) row[2]),
+                            key -> new long[2]);
+                    sums[0] += toCents((BigDecimal) row[3]);
+                    sums[1]++;
+                }
+                return totals;
+            }
+            
+            long middle = fromId + (toId - fromId) / 2;
+            RangeTask left = new RangeTask(fromId, middle);
+            RangeTask right = new RangeTask(middle, toId);
+            left.fork();
+            Map<RollupKey, long[]> merged = right.compute();
+            left.join().forEach((key, sums) -> merged.merge(key, sums, (a, b) -> {
+                a[0] += b[0];
+                a[1] += b[1];
+                return a;
+            }));
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.x3.app.service;
+
+import com.x3.app.model.Course;
+import com.x3.app.model.Quiz;
+import com.x3.app.model.ScoreAggregate;
+import com.x3.app.model.UserQuizAttempt;
+import com.x3.app.payload.response.ScoreStatisticsResponse;
+import com.x3.app.repository.ScoreAggregateRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@RequiredArgsConstructor
+public class ScoreAggregateService {
+    
+    private final ScoreAggregateRepository scoreAggregateRepository;
+    
+    // In-memory mirror of score_aggregates, keyed by scope and scope key
+    private final Map<String, Moments> mirror = new ConcurrentHashMap<>();
+    private volatile boolean mirrorLoaded = false;
+    
+    /**
+     * Adds a completed attempt to the quiz and category/level/difficulty aggregates. Must run
+     * inside the transaction that completes the attempt; the mirror is updated after commit.
+     * Generated and adaptive attempts are left out, since the learner chose their paper.
+     */
+    @Transactional
+    public void recordScore(UserQuizAttempt attempt) {
+        if (!attempt.usesQuizPaper()) {
+            return;
+        }
+        Quiz quiz = attempt.getQuiz();
+        double score = attempt.getScore();
+        
+        String quizKey = String.valueOf(quiz.getId());
+        scoreAggregateRepository.addScore(ScoreAggregate.Scope.QUIZ.name(), quizKey, score);
+        
+        String categoryKey = null;
+        if (quiz.getCourse() != null) {
+            categoryKey = categoryKey(quiz.getCourse().getCategory(), quiz.getCourse().getLevel(), quiz.getDifficulty());
+            scoreAggregateRepository.addScore(ScoreAggregate.Scope.CATEGORY_LEVEL_DIFFICULTY.name(), categoryKey, score);
+        }
+        
+        String finalCategoryKey = categoryKey;
+        Runnable applyToMirror = () -> {
+            addToMirror(ScoreAggregate.Scope.QUIZ, quizKey, score);
+            if (finalCategoryKey != null) {
+                addToMirror(ScoreAggregate.Scope.CATEGORY_LEVEL_DIFFICULTY, finalCategoryKey, score);
+            }
+        };
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    applyToMirror.run();
+                }
+            });
+        } else {
+            applyToMirror.run();
+        }
+    }
+    
+    public ScoreStatisticsResponse getQuizStatistics(Long quizId) {
+        ensureMirrorLoaded();
+        return toResponse(mirror.getOrDefault(mirrorKey(ScoreAggregate.Scope.QUIZ, String.valueOf(quizId)), Moments.EMPTY));
+    }
+    
+    public ScoreStatisticsResponse getCategoryStatistics(Course.Category category, Course.Level level) {
+        ensureMirrorLoaded();
+        Moments total = Moments.EMPTY;
+        for (Course.Difficulty difficulty : Course.Difficulty.values()) {
+            Moments moments = mirror.get(mirrorKey(ScoreAggregate.Scope.CATEGORY_LEVEL_DIFFICULTY,
+                    categoryKey(category, level, difficulty)));
+            if (moments != null) {
+                total = total.plus(moments);
+            }
+        }
+        return toResponse(total);
+    }
+    
+    public ScoreStatisticsResponse getCategoryStatistics(
+            Course.Category category, Course.Level level, Course.Difficulty difficulty) {
+        ensureMirrorLoaded();
+        return toResponse(mirror.getOrDefault(mirrorKey(ScoreAggregate.Scope.CATEGORY_LEVEL_DIFFICULTY,
+                categoryKey(category, level, difficulty)), Moments.EMPTY));
+    }
+    
+    @Transactional
+    public void rebuildAggregates() {
+        scoreAggregateRepository.deleteAllAggregates();
+        scoreAggregateRepository.rebuildQuizAggregates();
+        scoreAggregateRepository.rebuildCategoryAggregates();
+        reloadMirror();
+    }
+    
+    // Picks up increments made by other nodes
+    @Scheduled(fixedDelayString = "${quiz.statistics.mirror-refresh-ms:60000}")
+    public void reloadMirror() {
+        Map<String, Moments> loaded = new ConcurrentHashMap<>();
+        for (ScoreAggregate aggregate : scoreAggregateRepository.findAll()) {
+            loaded.put(mirrorKey(aggregate.getScope(), aggregate.getScopeKey()),
+                    new Moments(aggregate.getAttemptCount(), aggregate.getScoreSum(), aggregate.getScoreSquareSum()));
+        }
+        mirror.keySet().retainAll(loaded.keySet());
+        mirror.putAll(loaded);
+        mirrorLoaded = true;
+    }
+    
+    private void ensureMirrorLoaded() {
+        if (!mirrorLoaded) {
+            synchronized (this) {
+                if (!mirrorLoaded) {
+                    reloadMirror();
+                }
+            }
+        }
+    }
+    
+    private void addToMirror(ScoreAggregate.Scope scope, String scopeKey, double score) {
+        mirror.merge(mirrorKey(scope, scopeKey), new Moments(1, score, score * score), Moments::plus);
+    }
+    
+    private ScoreStatisticsResponse toResponse(Moments moments) {
+        if (moments.count == 0) {
+            return new ScoreStatisticsResponse(0, null, null, null);
+        }
+        double mean = moments.sum / moments.count;
+        // Population variance; clamp the tiny negative values floating point can produce
+        double variance = Math.max(0, moments.sumOfSquares / moments.count - mean * mean);
+        return new ScoreStatisticsResponse(moments.count, mean, variance, Math.sqrt(variance));
+    }
+    
+    private static String categoryKey(Course.Category category, Course.Level level, Course.Difficulty difficulty) {
+        return category + ":" + level + ":" + difficulty;
+    }
+    
+    private static String mirrorKey(ScoreAggregate.Scope scope, String scopeKey) {
+        return scope + "/" + scopeKey;
+    }
+    
+    private static final class Moments {
+        private static final Moments EMPTY = new Moments(0, 0, 0);
+        
+        private final long count;
+        private final double sum;
+        private final double sumOfSquares;
+        
+        private Moments(long count, double sum, double sumOfSquares) {
+            this.count = count;
+            this.sum = sum;
+            this.sumOfSquares = sumOfSquares;
+        }
+        
+        private Moments plus(Moments other) {
+            return new Moments(count + other.count, sum + other.sum, sumOfSquares + other.sumOfSquares);
+        }
+    }
+}
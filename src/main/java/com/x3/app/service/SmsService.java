@@ -30,6 +30,9 @@ public class SmsService {
     @Value("${aliyun.sms.template-code}")
     private String templateCode;
     
+    @Value("${aliyun.sms.receipt-template-code}")
+    private String receiptTemplateCode;
+    
     private Client createClient() throws Exception {
         Config config = new Config()
                 .setAccessKeyId(accessKeyId)
@@ -48,21 +51,35 @@ public class SmsService {
             redisTemplate.opsForValue().set(redisKey, code, 5, TimeUnit.MINUTES);
             
             // Send the SMS
-            Client client = createClient();
-            SendSmsRequest request = new SendSmsRequest()
-                    .setPhoneNumbers(phoneNumber)
-                    .setSignName(signName)
-                    .setTemplateCode(templateCode)
-                    .setTemplateParam("{\"code\":\"" + code + "\"}");
-            
-            SendSmsResponse response = client.sendSms(request);
-            return "OK".equals(response.body.code);
+            return send(phoneNumber, templateCode, "{\"code\":\"" + code + "\"}");
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    public boolean sendPaymentReceipt(String phoneNumber, String orderNumber, String validUntil) {
+        try {
+            return send(phoneNumber, receiptTemplateCode,
+                    "{\"order\":\"" + orderNumber + "\",\"validUntil\":\"" + validUntil + "\"}");
         } catch (Exception e) {
             e.printStackTrace();
             return false;
         }
     }
     
+    private boolean send(String phoneNumber, String template, String templateParam) throws Exception {
+        Client client = createClient();
+        SendSmsRequest request = new SendSmsRequest()
+                .setPhoneNumbers(phoneNumber)
+                .setSignName(signName)
+                .setTemplateCode(template)
+                .setTemplateParam(templateParam);
+        
+        SendSmsResponse response = client.sendSms(request);
+        return "OK".equals(response.body.code);
+    }
+    
     public boolean verifyCode(String phoneNumber, String code) {
         String redisKey = "sms:verification:" + phoneNumber;
         String storedCode = redisTemplate.opsForValue().get(redisKey);
@@ -2,14 +2,19 @@ package com.x3.app.service;
 
 import com.x3.app.model.CourseSection;
 import com.x3.app.model.User;
-import com.x3.app.model.UserQuizAttempt;
 import com.x3.app.model.UserSectionProgress;
-import com.x3.app.repository.UserQuizAttemptRepository;
+import com.x3.app.payload.request.HeartbeatRequest;
+import com.x3.app.payload.response.CourseCompletionResponse;
+import com.x3.app.payload.response.SectionProgressResponse;
+import com.x3.app.repository.SectionProgressBatchRepository;
 import com.x3.app.repository.UserSectionProgressRepository;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -17,9 +22,37 @@ import java.util.Optional;
 @Service
 @RequiredArgsConstructor
 public class UserProgressService {
+    private static final Logger logger = LoggerFactory.getLogger(UserProgressService.class);
     
     private final UserSectionProgressRepository progressRepository;
-    private final UserQuizAttemptRepository attemptRepository;
+    private final SectionProgressBatchRepository progressBatchRepository;
+    private final RecentAttemptCache recentAttemptCache;
+    private final HeartbeatIngestionService heartbeatIngestionService;
+    private final CourseCompletionCache courseCompletionCache;
+    private final LearnerNudgeService learnerNudgeService;
+    private final CourseRecommendationService courseRecommendationService;
+    private final LearnerRiskService learnerRiskService;
+    
+    /**
+     * The progress upserts rely on uk_progress_user_section. ddl-auto skips the key when the
+     * table already holds duplicate rows, so they are merged and the key is added here; startup
+     * fails rather than running without it.
+     */
+    @PostConstruct
+    public void ensureUniqueProgressKey() {
+        if (progressBatchRepository.hasUniqueKey()) {
+            return;
+        }
+        try {
+            int deleted = progressBatchRepository.deduplicateAndAddUniqueKey();
+            logger.info("Merged {} duplicate section progress rows and added uk_progress_user_section", deleted);
+        } catch (RuntimeException e) {
+            // Another node starting at the same time may have added it first
+            if (!progressBatchRepository.hasUniqueKey()) {
+                throw new IllegalStateException("user_section_progress is missing uk_progress_user_section", e);
+            }
+        }
+    }
     
     public List<UserSectionProgress> getUserProgress(User user) {
         return progressRepository.findByUser(user);
@@ -29,29 +62,43 @@ public class UserProgressService {
         return progressRepository.findByUserAndSection(user, section);
     }
     
+    /**
+     * Records progress for a section with a single upsert keyed by (user_id, section_id), so
+     * concurrent taps cannot create duplicate rows and no entities need to be loaded.
+     */
     @Transactional
-    public UserSectionProgress createOrUpdateProgress(User user, CourseSection section, boolean completed, boolean skipped) {
-        Optional<UserSectionProgress> existingProgress = progressRepository.findByUserAndSection(user, section);
-        
-        UserSectionProgress progress;
-        if (existingProgress.isPresent()) {
-            progress = existingProgress.get();
-            progress.setCompleted(completed);
-            progress.setSkipped(skipped);
-            
-            if (!skipped && !completed && progress.getRepeatCount() != null) {
-                progress.setRepeatCount(progress.getRepeatCount() + 1);
-            }
-        } else {
-            progress = new UserSectionProgress();
-            progress.setUser(user);
-            progress.setSection(section);
-            progress.setCompleted(completed);
-            progress.setSkipped(skipped);
-            progress.setRepeatCount(0);
+    public SectionProgressResponse recordProgress(Long userId, Long sectionId, boolean completed, boolean skipped) {
+        progressRepository.upsertProgress(userId, sectionId, completed, skipped);
+        courseCompletionCache.recordProgress(userId, sectionId, completed, skipped);
+        learnerNudgeService.clearNudge(userId, sectionId);
+        if (skipped) {
+            learnerRiskService.recordSkip(userId);
+        }
+        return new SectionProgressResponse(sectionId, completed, skipped);
+    }
+    
+    public List<CourseCompletionResponse> getCompletionSummary(Long userId) {
+        return courseCompletionCache.getSummary(userId);
+    }
+    
+    public List<Long> getNudgedCourseIds(Long userId, int limit) {
+        return learnerNudgeService.getNudgedCourseIds(userId, limit);
+    }
+    
+    public List<Long> getRecommendedCourseIds(Long userId, int limit) {
+        return courseRecommendationService.recommend(userId, limit);
+    }
+    
+    public void ingestHeartbeats(Long userId, List<HeartbeatRequest.Heartbeat> heartbeats) {
+        heartbeatIngestionService.ingest(userId, heartbeats);
+    }
+    
+    public Integer getResumePosition(Long userId, Long sectionId) {
+        Integer buffered = heartbeatIngestionService.getBufferedPosition(userId, sectionId);
+        if (buffered != null) {
+            return buffered;
         }
-        
-        return progressRepository.save(progress);
+        return progressRepository.findLastPositionSeconds(userId, sectionId).orElse(0);
     }
     
     public List<UserSectionProgress> findStagnantProgress(User user, int daysThreshold) {
@@ -64,19 +111,6 @@ public class UserProgressService {
     }
     
     public boolean checkConsecutiveLowScores(User user, int threshold) {
-        List<UserQuizAttempt> recentAttempts = attemptRepository.findLast3AttemptsByUser(user);
-        
-        if (recentAttempts.size() < 3) {
-            return false;
-        }
-        
-        int lowScoreCount = 0;
-        for (UserQuizAttempt attempt : recentAttempts) {
-            if (attempt.getScore() < 60) {
-                lowScoreCount++;
-            }
-        }
-        
-        return lowScoreCount >= threshold;
+        return recentAttemptCache.hasConsecutiveLowScores(user, threshold);
     }
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ public class UserService {
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ReferralGraphService referralGraphService;
     
     public List<User> getAllUsers() {
         return userRepository.findAll();
@@ -46,16 +47,26 @@ public class UserService {
         });
         user.setRoles(roles);
         
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        referralGraphService.recordSignup(savedUser.getId(), savedUser.getInvitedBy());
+        return savedUser;
     }
     
     @Transactional
     public User updateUser(User user) {
+        Long previousInviterId = userRepository.findById(user.getId())
+                .map(User::getInvitedBy)
+                .orElse(null);
+        if (!Objects.equals(previousInviterId, user.getInvitedBy())) {
+            // Keeps the referral closure, which authorizes downline access, in step with invitedBy
+            referralGraphService.moveUser(user.getId(), user.getInvitedBy());
+        }
         return userRepository.save(user);
     }
     
     @Transactional
     public void deleteUser(Long id) {
+        referralGraphService.removeUser(id);
         userRepository.deleteById(id);
     }
     
@@ -0,0 +1,136 @@
+package com.x3.app.service;
+
+import com.sun.net.httpserver.HttpServer;
+import com.x3.app.model.AiAssistanceLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the answer pipeline against a local stub of the model backend.
+ */
+class AiAnswerPipelineTest {
+    
+    private static final String ANSWERS =
+            "{\"answers\":[{\"id\":1,\"answer\":\"Use the quadratic formula.\"},{\"id\":2,\"answer\":\" \"}]}";
+    
+    private HttpServer server;
+    private final AtomicReference<String> lastRequest = new AtomicReference<>();
+    private volatile long responseDelayMillis = 0;
+    
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/generate", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                lastRequest.set(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            sleep(responseDelayMillis);
+            byte[] response = ANSWERS.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+    }
+    
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+    
+    @Test
+    void generatorPostsBatchAndKeepsNonBlankAnswers() {
+        Map<Long, String> answers = generator(2000).generate(Arrays.asList(
+                log(1L, "How do I solve x^2 - 4 = 0?"), log(2L, "What is a prime?")));
+        
+        assertThat(answers).containsOnlyKeys(1L);
+        assertThat(answers.get(1L)).isEqualTo("Use the quadratic formula.");
+        assertThat(lastRequest.get()).contains("\"id\":1", "How do I solve x^2 - 4 = 0?", "\"knowledgePoint\":\"algebra\"");
+    }
+    
+    @Test
+    void generatorGivesUpAfterReadTimeout() {
+        responseDelayMillis = 1000;
+        
+        assertThrows(ResourceAccessException.class,
+                () -> generator(200).generate(Collections.singletonList(log(1L, "Slow question"))));
+    }
+    
+    @Test
+    void pipelineWritesGeneratedAnswersUnderItsOwnLease() throws InterruptedException {
+        AiAssistanceService service = mock(AiAssistanceService.class);
+        List<AiAssistanceLog> batch = Arrays.asList(log(1L, "How do I solve x^2 - 4 = 0?"), log(2L, "What is a prime?"));
+        when(service.claimUnansweredLogs(anyLong(), anyInt())).thenReturn(batch, Collections.emptyList());
+        
+        AiAnswerPipeline pipeline = new AiAnswerPipeline(service, generator(2000), true, null, 2, 4, 8);
+        pipeline.poll();
+        pipeline.shutdown();
+        
+        Long workerId = pipeline.getWorkerId();
+        verify(service).claimUnansweredLogs(eq(workerId), eq(8));
+        verify(service).updateAiAssistanceLogWithAnswer(1L, "Use the quadratic formula.", workerId);
+        verify(service, never()).updateAiAssistanceLogWithAnswer(eq(2L), anyString(), anyLong());
+        assertThat(pipeline.getAnsweredCount()).isEqualTo(1);
+        assertThat(pipeline.getFailedCount()).isEqualTo(1);
+    }
+    
+    @Test
+    void workerIdsAreNegativeAndDistinctPerNode() {
+        AiAssistanceService service = mock(AiAssistanceService.class);
+        AiAnswerPipeline first = new AiAnswerPipeline(service, generator(2000), false, null, 1, 1, 1);
+        AiAnswerPipeline second = new AiAnswerPipeline(service, generator(2000), false, null, 1, 1, 1);
+        
+        assertThat(first.getWorkerId()).isNegative();
+        assertThat(second.getWorkerId()).isNegative().isNotEqualTo(first.getWorkerId());
+        assertThrows(IllegalArgumentException.class,
+                () -> new AiAnswerPipeline(service, generator(2000), false, 0L, 1, 1, 1));
+    }
+    
+    private HttpAiAnswerGenerator generator(long timeoutMillis) {
+        return new HttpAiAnswerGenerator(new RestTemplateBuilder(),
+                "http://localhost:" + server.getAddress().getPort() + "/generate", timeoutMillis);
+    }
+    
+    private static AiAssistanceLog log(Long id, String question) {
+        AiAssistanceLog log = new AiAssistanceLog();
+        log.setId(id);
+        log.setQuestion(question);
+        log.setKnowledgePoint("algebra");
+        return log;
+    }
+    
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}